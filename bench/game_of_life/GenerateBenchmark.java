@@ -0,0 +1,96 @@
+package game_of_life;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation throughput of the engines across board sizes, densities and
+ * rules. The vector engine falls back to the array engine unless the forked
+ * JVM runs with <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * The boards are filled again before every iteration. Otherwise a soup
+ * would decay to ash during the warmup, and the array engine would skip
+ * almost all tiles while the bit engine still computes every word.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateBenchmark {
+
+	@Param({ "256", "1024", "4096" })
+	public int size;
+
+	@Param({ "0.05", "0.5" })
+	public double density;
+
+	@Param({ "23/3", "1357/1357" })
+	public String rule;
+
+	private Simulation simulation;
+
+	private Simulation vectorSimulation;
+
+	private BitSimulation bitSimulation;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		simulation = new Simulation();
+		simulation.setRule(rule);
+		simulation.setBoardSize(size, size);
+
+		vectorSimulation = new Simulation();
+		vectorSimulation.setVectorized(true);
+		vectorSimulation.setRule(rule);
+		vectorSimulation.setBoardSize(size, size);
+
+		bitSimulation = new BitSimulation();
+		bitSimulation.setRule(rule);
+		bitSimulation.setBoardSize(size, size);
+
+		Random rand = new Random(42);
+		for (int y = 0; y < size; ++y) {
+			for (int x = 0; x < size; ++x) {
+				if (rand.nextDouble() < density) {
+					simulation.setBoardCell(x, y, 1);
+					vectorSimulation.setBoardCell(x, y, 1);
+					bitSimulation.setBoardCell(x, y, 1);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int generate() {
+		simulation.generate();
+		return simulation.getNumLiving();
+	}
+
+	@Benchmark
+	public int generateVector() {
+		vectorSimulation.generate();
+		return vectorSimulation.getNumLiving();
+	}
+
+	@Benchmark
+	public int generateBits() {
+		bitSimulation.generate();
+		return bitSimulation.getNumLiving();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
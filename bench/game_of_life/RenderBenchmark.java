@@ -0,0 +1,80 @@
+package game_of_life;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Off-screen render time of {@link BoardCanvas} into a
+ * {@link BufferedImage}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	@Param({ "500", "1000" })
+	public int size;
+
+	@Param({ "1", "4" })
+	public int cellSize;
+
+	@Param({ "0.05", "0.5" })
+	public double density;
+
+	@Param({ "false", "true" })
+	public boolean grid;
+
+	private BoardCanvas canvas;
+
+	private BufferedImage image;
+
+	private Graphics2D graphics;
+
+	@Setup
+	public void setup() {
+		Simulation simulation = new Simulation();
+		simulation.setBoardSize(size / cellSize, size / cellSize);
+		canvas = new BoardCanvas(simulation, grid, cellSize);
+		canvas.setSize(size, size);
+		canvas.setCellSize(cellSize);
+
+		Random rand = new Random(42);
+		for (int y = 0; y < simulation.getBoardHeight(); ++y)
+			for (int x = 0; x < simulation.getBoardWidth(); ++x)
+				if (rand.nextDouble() < density)
+					simulation.setBoardCell(x, y, 1);
+
+		image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		canvas.paintComponent(graphics);
+		return image;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,77 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse and serialize throughput of RLE files of large patterns. The
+ * pattern is a seeded random board saved through {@link RleWriter}, so the
+ * file has the run lengths of a real RLE file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RleBenchmark {
+
+	@Param({ "1024", "4096" })
+	public int size;
+
+	@Param({ "0.05", "0.5" })
+	public double density;
+
+	private Simulation simulation;
+
+	private File patternFile;
+
+	private File outputFile;
+
+	@Setup
+	public void setup() throws IOException {
+		// Quiet, readFile would print its progress in every invocation
+		simulation = new Simulation(true);
+		simulation.setBoardSize(size, size);
+
+		patternFile = File.createTempFile("pattern", ".rle");
+		outputFile = File.createTempFile("output", ".rle");
+		simulation.randomizeBoard(42, density);
+		simulation.saveFile(patternFile);
+
+		simulation.readFile(patternFile);
+	}
+
+	@TearDown
+	public void tearDown() {
+		patternFile.delete();
+		outputFile.delete();
+	}
+
+	@Benchmark
+	public int readFile() throws IOException {
+		simulation.readFile(patternFile);
+		return simulation.getNumLiving();
+	}
+
+	@Benchmark
+	public long saveFile() throws IOException {
+		simulation.saveFile(outputFile);
+		return outputFile.length();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
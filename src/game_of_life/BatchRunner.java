@@ -0,0 +1,362 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Runs a simulation without user interface, e.g. on headless machines.
+ * Usage: <code>BatchRunner [options]</code>
+ * <ul>
+ * <li>-i file: RLE file to load, or Macrocell file for the engine
+ * <code>hashlife</code></li>
+ * <li>-o file: RLE file to save the final board to, Macrocell file for the
+ * engine <code>hashlife</code></li>
+ * <li>-w width, -h height: board size</li>
+ * <li>-s seed: seed of the random board if no file is loaded, the same seed
+ * gives the same board with every engine and number of threads (default
+ * random)</li>
+ * <li>-d density: share of living cells of the random board (default 0.5)</li>
+ * <li>-r rule: generation rule, overrides the rule of the file</li>
+ * <li>-n generations: generation to stop at</li>
+ * <li>-t threads: number of threads</li>
+ * <li>-p period: stop at still lifes and oscillators up to this period, only
+ * supported by the array engine</li>
+ * <li>-v true|false: verify detected cycles by comparing the boards
+ * (default true)</li>
+ * <li>-c file: checkpoint file, the run is resumed from it if it exists</li>
+ * <li>-k generations: checkpoint interval (default 10000)</li>
+ * <li>-e engine: <code>array</code> (default), <code>vector</code> for the
+ * array engine with the Vector API, <code>bit</code>, <code>offheap</code>
+ * for boards outside of the heap, <code>sparse</code> for an unbounded
+ * plane or <code>hashlife</code> for huge repetitive patterns</li>
+ * <li>-m file: map the boards of the engine <code>offheap</code> from this
+ * file instead of keeping them in memory</li>
+ * </ul>
+ */
+public class BatchRunner {
+
+	private static final int DEFAULT_SIZE = 500;
+
+	private static final int DEFAULT_GENERATIONS = 1000;
+
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
+	private File inputFile;
+
+	private File outputFile;
+
+	private int width = DEFAULT_SIZE;
+
+	private int height = DEFAULT_SIZE;
+
+	private String rule;
+
+	private long seed = new Random().nextLong();
+
+	private double density = 0.5;
+
+	private long generations = DEFAULT_GENERATIONS;
+
+	private int threads = 1;
+
+	private String engine = "array";
+
+	private int maxPeriod;
+
+	private boolean verify = true;
+
+	private File checkpointFile;
+
+	private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	private File mapFile;
+
+	public BatchRunner(String[] argv) {
+		for (int n = 0; n < argv.length; ++n) {
+			String arg = argv[n];
+			if (n + 1 >= argv.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = argv[++n];
+
+			if (arg.equals("-i"))
+				inputFile = new File(value);
+			else if (arg.equals("-o"))
+				outputFile = new File(value);
+			else if (arg.equals("-w"))
+				width = Integer.parseInt(value);
+			else if (arg.equals("-h"))
+				height = Integer.parseInt(value);
+			else if (arg.equals("-s"))
+				seed = Long.parseLong(value);
+			else if (arg.equals("-d"))
+				density = Double.parseDouble(value);
+			else if (arg.equals("-r"))
+				rule = value;
+			else if (arg.equals("-n"))
+				generations = Long.parseLong(value);
+			else if (arg.equals("-t"))
+				threads = Integer.parseInt(value);
+			else if (arg.equals("-e"))
+				engine = value;
+			else if (arg.equals("-p"))
+				maxPeriod = Integer.parseInt(value);
+			else if (arg.equals("-v"))
+				verify = Boolean.parseBoolean(value);
+			else if (arg.equals("-c"))
+				checkpointFile = new File(value);
+			else if (arg.equals("-k"))
+				checkpointInterval = Long.parseLong(value);
+			else if (arg.equals("-m"))
+				mapFile = new File(value);
+			else
+				throw new IllegalArgumentException("Unknown option " + arg);
+		}
+
+		boolean array = engine.equals("array") || engine.equals("vector");
+		if (maxPeriod > 0 && !array)
+			throw new IllegalArgumentException("Option -p needs engine array");
+		if (checkpointFile != null && !array)
+			throw new IllegalArgumentException("Option -c needs engine array");
+		if (mapFile != null && !engine.equals("offheap"))
+			throw new IllegalArgumentException("Option -m needs engine offheap");
+		if (!(density >= 0 && density <= 1))
+			throw new IllegalArgumentException("Invalid density " + density);
+		if (checkpointInterval < 1)
+			throw new IllegalArgumentException("Invalid checkpoint interval");
+	}
+
+	public void run() throws IOException {
+		if (inputFile == null)
+			System.out.println("Random board with seed " + seed);
+		if (engine.equals("array") || engine.equals("vector"))
+			runArray();
+		else if (engine.equals("bit"))
+			runBit();
+		else if (engine.equals("offheap"))
+			runOffHeap();
+		else if (engine.equals("sparse"))
+			runSparse();
+		else if (engine.equals("hashlife"))
+			runHashLife();
+		else
+			throw new IllegalArgumentException("Unknown engine " + engine);
+	}
+
+	private void runArray() throws IOException {
+		Simulation simulation = new Simulation();
+		simulation.setBoardSize(width, height);
+		simulation.setParallelism(threads, simulation.getBandHeight());
+		if (engine.equals("vector") && !simulation.setVectorized(true))
+			System.out.println("Falling back to engine array");
+
+		if (checkpointFile != null && checkpointFile.exists()) {
+			System.out.println("Resuming from " + checkpointFile);
+			simulation.restore(Checkpoint.read(checkpointFile));
+		} else {
+			if (inputFile != null)
+				simulation.readFile(inputFile);
+			else
+				simulation.randomizeBoard(seed, density);
+
+			if (rule != null)
+				simulation.setRule(rule);
+		}
+
+		CycleDetector detector = null;
+		if (maxPeriod > 0)
+			detector = new CycleDetector(simulation, maxPeriod, verify);
+
+		CheckpointWriter writer = null;
+		if (checkpointFile != null)
+			writer = new CheckpointWriter(checkpointFile);
+
+		long first = simulation.getNumGenerations();
+		long start = System.nanoTime();
+		while (simulation.getNumGenerations() < generations) {
+			simulation.generate();
+			if (detector != null && detector.update())
+				break;
+			if (writer != null
+					&& simulation.getNumGenerations() % checkpointInterval == 0)
+				writer.submit(simulation.createCheckpoint());
+		}
+		long time = System.nanoTime() - start;
+
+		if (writer != null) {
+			writer.finish();
+			writer.submit(simulation.createCheckpoint());
+			writer.close();
+		}
+
+		long steps = simulation.getNumGenerations() - first;
+		report(time, steps, (long) simulation.getBoardWidth()
+				* simulation.getBoardHeight() * steps,
+				simulation.getNumGenerations(), simulation.getNumLiving());
+		if (detector != null && detector.getPeriod() > 0)
+			System.out.println("Period " + detector.getPeriod()
+					+ " since generation " + detector.getStart());
+
+		if (outputFile != null) {
+			System.out.println("Writing file " + outputFile);
+			simulation.saveFile(outputFile);
+		}
+	}
+
+	private void runBit() throws IOException {
+		BitSimulation simulation = new BitSimulation();
+		simulation.setBoardSize(width, height);
+
+		if (inputFile != null)
+			simulation.readFile(inputFile);
+		else
+			simulation.randomizeBoard(seed, density);
+
+		if (rule != null)
+			simulation.setRule(rule);
+
+		long start = System.nanoTime();
+		for (int n = 0; n < generations; ++n)
+			simulation.generate();
+		long time = System.nanoTime() - start;
+
+		report(time, generations, (long) simulation.getBoardWidth()
+				* simulation.getBoardHeight() * generations,
+				simulation.getNumGenerations(), simulation.getNumLiving());
+
+		if (outputFile != null) {
+			System.out.println("Writing file " + outputFile);
+			simulation.saveFile(outputFile);
+		}
+	}
+
+	private void runOffHeap() throws IOException {
+		OffHeapSimulation simulation = new OffHeapSimulation(mapFile);
+		try {
+			simulation.setBoardSize(width, height);
+			simulation.setParallelism(threads);
+
+			if (inputFile != null)
+				simulation.readFile(inputFile);
+			else
+				simulation.randomizeBoard(seed, density);
+
+			if (rule != null)
+				simulation.setRule(rule);
+
+			long start = System.nanoTime();
+			for (int n = 0; n < generations; ++n)
+				simulation.generate();
+			long time = System.nanoTime() - start;
+
+			report(time, generations, (long) simulation.getBoardWidth()
+					* simulation.getBoardHeight() * generations,
+					simulation.getNumGenerations(), simulation.getNumLiving());
+
+			if (outputFile != null) {
+				System.out.println("Writing file " + outputFile);
+				simulation.saveFile(outputFile);
+			}
+		} finally {
+			simulation.close();
+		}
+	}
+
+	/**
+	 * The unbounded plane needs a pattern, the board size is not used
+	 */
+	private void runSparse() throws IOException {
+		if (inputFile == null)
+			throw new IllegalArgumentException("Engine sparse needs -i");
+
+		SparseSimulation simulation = new SparseSimulation();
+		simulation.readFile(inputFile);
+
+		if (rule != null)
+			simulation.setRule(rule);
+
+		long start = System.nanoTime();
+		for (int n = 0; n < generations; ++n)
+			simulation.generate();
+		long time = System.nanoTime() - start;
+
+		report(time, generations, simulation.getNumCellsUpdated(),
+				simulation.getNumGenerations(), simulation.getNumLiving());
+		System.out.println("Chunks: " + simulation.getNumChunks());
+
+		if (outputFile != null) {
+			System.out.println("Writing file " + outputFile);
+			simulation.saveFile(outputFile);
+		}
+	}
+
+	/**
+	 * Runs up to the given generation in steps of powers of two, so the
+	 * generation count of a Macrocell file is taken into account. The
+	 * pattern is only written as Macrocell file.
+	 */
+	private void runHashLife() throws IOException {
+		if (inputFile == null)
+			throw new IllegalArgumentException("Engine hashlife needs -i");
+		if (outputFile != null
+				&& !outputFile.getName().toLowerCase().endsWith(".mc"))
+			throw new IllegalArgumentException(
+					"Engine hashlife writes only .mc files");
+
+		HashLife hashLife = new HashLife();
+		hashLife.readFile(inputFile);
+
+		if (rule != null)
+			hashLife.setRule(rule);
+
+		long first = hashLife.getNumGenerations();
+		long start = System.nanoTime();
+		while (hashLife.getNumGenerations() < generations) {
+			long left = generations - hashLife.getNumGenerations();
+			hashLife.step(63 - Long.numberOfLeadingZeros(left));
+		}
+		long time = System.nanoTime() - start;
+
+		// Cells are not updated one by one
+		report(time, hashLife.getNumGenerations() - first, -1,
+				hashLife.getNumGenerations(), hashLife.getNumLiving());
+		System.out.println("Nodes: " + hashLife.getNumNodes());
+
+		if (outputFile != null) {
+			System.out.println("Writing file " + outputFile);
+			hashLife.writeMacrocell(outputFile);
+		}
+	}
+
+	private void report(long time, long steps, long cells,
+			long numGenerations, long numLiving) {
+		double seconds = time / 1e9;
+		System.out.println("Generations: " + numGenerations + ", living: "
+				+ numLiving);
+		System.out.println("Wall time: " + seconds + " s");
+		System.out.println("Generations/s: " + steps / seconds);
+		if (cells >= 0)
+			System.out.println("Cells/s: " + cells / seconds);
+	}
+
+	public static void main(String[] argv) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		BatchRunner runner;
+		try {
+			runner = new BatchRunner(argv);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: BatchRunner [-i input.rle] [-o output.rle]"
+					+ " [-w width] [-h height] [-s seed] [-d density]"
+					+ " [-r rule] [-n generations]"
+					+ " [-t threads] [-p period] [-v true|false]"
+					+ " [-c checkpoint] [-k interval] [-m mapfile]"
+					+ " [-e array|vector|bit|offheap|sparse|hashlife]");
+			System.exit(1);
+			return;
+		}
+		runner.run();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,430 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Simulation engine which packs 64 cells into every <code>long</code>.
+ * Bit x &amp; 63 of word x / 64 of a row holds cell x. The neighbor counts
+ * of a whole word are computed at once by a bitwise adder network, so every
+ * operation advances 64 cells. The board wraps around like in
+ * {@link Simulation}.
+ */
+public class BitSimulation {
+
+	private long[][] board;
+
+	private long[][] tempBoard;
+
+	private int boardWidth;
+
+	private int boardHeight;
+
+	private int numGenerations;
+
+	private int numLiving;
+
+	private Rule rule;
+
+	private static final String CONWAY_RULE = "23/3";
+
+	private static final int MAX_PATTERN_SIZE = 1 << 20;
+
+	/*
+	 * Every simulation has its own generator, so concurrent simulations
+	 * neither contend for it nor disturb each other's sequence
+	 */
+	private Random rand = new Random();
+
+	public BitSimulation() {
+		setRule(CONWAY_RULE);
+	}
+
+	public void setBoardSize(int width, int height) {
+		if (board != null && width == boardWidth && height == boardHeight)
+			return;
+
+		System.out.println("Creating bit board: width=" + width + ", height="
+				+ height);
+
+		int words = numWords(width);
+		long[][] newBoard = new long[height][words];
+		if (board != null) {
+			int w = Math.min(words, numWords(boardWidth));
+			int h = Math.min(height, boardHeight);
+			for (int y = 0; y < h; ++y) {
+				System.arraycopy(board[y], 0, newBoard[y], 0, w);
+				newBoard[y][words - 1] &= lastWordMask(width);
+			}
+		}
+
+		board = newBoard;
+		tempBoard = new long[height][words];
+		boardWidth = width;
+		boardHeight = height;
+		countLiving();
+		Metrics.getInstance().setBoardMemory(16L * height * words);
+	}
+
+	public void setRule(String rule) {
+		this.rule = Rule.parse(rule);
+		System.out.println("Rule loaded: " + getRule());
+	}
+
+	public String getRule() {
+		return rule.toString();
+	}
+
+	/**
+	 * Makes {@link #randomizeBoard()} reproducible
+	 */
+	public void setSeed(long seed) {
+		rand = new Random(seed);
+	}
+
+	/**
+	 * Fills the board with density 1/2, the seed is drawn from the generator
+	 * of {@link #setSeed}
+	 */
+	public void randomizeBoard() {
+		randomizeBoard(rand.nextLong(), 0.5);
+	}
+
+	/**
+	 * Fills the board at random like {@link Simulation#randomizeBoard(long,
+	 * double)}, the same seed and density give the same board
+	 */
+	public void randomizeBoard(long seed, double density) {
+		numGenerations = 0;
+		numLiving = 0;
+		RandomFill fill = new RandomFill(seed, density, boardHeight);
+		for (int y = 0; y < boardHeight; ++y)
+			numLiving += fill.nextRow(y / RandomFill.BAND_HEIGHT, board[y],
+					boardWidth);
+	}
+
+	public void clearBoard() {
+		for (int y = 0; y < boardHeight; ++y)
+			Arrays.fill(board[y], 0);
+		numGenerations = 0;
+		numLiving = 0;
+	}
+
+	public void readFile(File file) throws IOException {
+		readFile(file, null);
+	}
+
+	/**
+	 * Reads an RLE file, see {@link RleReader} for the format. The board is
+	 * enlarged if the pattern does not fit, and the pattern is centered.
+	 */
+	public void readFile(File file, ProgressListener listener)
+			throws IOException {
+		System.out.println("Reading file " + file);
+
+		clearBoard();
+		setRule(CONWAY_RULE); // Default file rule
+
+		RleReader reader = new RleReader(file);
+		reader.setProgressListener(listener);
+		reader.read(new PatternBuilder() {
+			private int xStart, yStart;
+
+			public void setRule(String rule) {
+				BitSimulation.this.setRule(rule);
+			}
+
+			public void setSize(long width, long height) throws IOException {
+				System.out.println("Size " + width + "/" + height);
+
+				if (width > MAX_PATTERN_SIZE || height > MAX_PATTERN_SIZE)
+					throw new IOException("Pattern too large: " + width + "/"
+							+ height);
+
+				if (boardWidth <= width || boardHeight <= height) {
+					setBoardSize(Math.max(boardWidth, (int) width + 10),
+							Math.max(boardHeight, (int) height + 10));
+					clearBoard();
+				}
+
+				xStart = (boardWidth - (int) width) / 2;
+				yStart = (boardHeight - (int) height) / 2;
+			}
+
+			public void setCells(long x, long y, long length) {
+				// Cells outside of the board are dropped
+				y += yStart;
+				if (y >= boardHeight)
+					return;
+				int from = (int) Math.min(x + xStart, boardWidth);
+				int to = (int) Math.min(x + xStart + length, boardWidth);
+				setBits(board[(int) y], from, to);
+				numLiving += to - from;
+			}
+		});
+	}
+
+	public void saveFile(File file) throws IOException {
+		saveFile(file, null);
+	}
+
+	/**
+	 * Writes the bounding box of the living cells as RLE file
+	 */
+	public void saveFile(File file, ProgressListener listener)
+			throws IOException {
+		int xMin = boardWidth, xMax = -1, yMin = boardHeight, yMax = -1;
+		for (int y = 0; y < boardHeight; ++y) {
+			long[] row = board[y];
+			for (int i = 0; i < row.length; ++i) {
+				if (row[i] == 0)
+					continue;
+				xMin = Math.min(xMin, (i << 6) + Long.numberOfTrailingZeros(row[i]));
+				xMax = Math.max(xMax, (i << 6) + 63 - Long.numberOfLeadingZeros(row[i]));
+				yMin = Math.min(yMin, y);
+				yMax = y;
+			}
+		}
+		if (xMax < 0)
+			xMin = yMin = 0;
+
+		final int xStart = xMin, yStart = yMin;
+		final int width = xMax - xMin + 1;
+
+		RleWriter writer = new RleWriter(file);
+		writer.setProgressListener(listener);
+		writer.write(getRule(), width, yMax - yMin + 1, new RleWriter.Rows() {
+			public void getRow(int y, long[] bits) {
+				extractBits(board[yStart + y], xStart, bits, width);
+			}
+		});
+	}
+
+	public void generate() {
+		long start = System.nanoTime();
+		numLiving = 0;
+		for (int y = 0; y < boardHeight; ++y) {
+			long[] top = board[(y + boardHeight - 1) % boardHeight];
+			long[] bottom = board[(y + 1) % boardHeight];
+			numLiving += stepRow(top, board[y], bottom, tempBoard[y],
+					boardWidth, rule);
+		}
+
+		long[][] temp = board;
+		board = tempBoard;
+		tempBoard = temp;
+
+		++numGenerations;
+		Metrics.getInstance().generated(System.nanoTime() - start,
+				(long) boardWidth * boardHeight, numLiving);
+	}
+
+	/**
+	 * Computes the next generation of a packed row of the given width into
+	 * <code>out</code>. The row wraps around horizontally.
+	 *
+	 * @return number of living cells in the new row
+	 */
+	static int stepRow(long[] top, long[] row, long[] bottom, long[] out,
+			int width, Rule rule) {
+		int last = numWords(width) - 1;
+		int lastBit = (width - 1) & 63;
+
+		int count = 0;
+		for (int i = 0; i <= last; ++i) {
+			// Bits shifted in from the left (x - 1) and right (x + 1) words
+			long topL, rowL, bottomL;
+			if (i > 0) {
+				topL = top[i - 1] >>> 63;
+				rowL = row[i - 1] >>> 63;
+				bottomL = bottom[i - 1] >>> 63;
+			} else {
+				topL = (top[last] >>> lastBit) & 1;
+				rowL = (row[last] >>> lastBit) & 1;
+				bottomL = (bottom[last] >>> lastBit) & 1;
+			}
+
+			long topR, rowR, bottomR;
+			if (i < last) {
+				topR = top[i + 1] << 63;
+				rowR = row[i + 1] << 63;
+				bottomR = bottom[i + 1] << 63;
+			} else {
+				topR = (top[0] & 1) << lastBit;
+				rowR = (row[0] & 1) << lastBit;
+				bottomR = (bottom[0] & 1) << lastBit;
+			}
+
+			long t = top[i], r = row[i], b = bottom[i];
+			long next = evolve((t << 1) | topL, t, (t >>> 1) | topR,
+					(r << 1) | rowL, r, (r >>> 1) | rowR,
+					(b << 1) | bottomL, b, (b >>> 1) | bottomR, rule);
+
+			if (i == last)
+				next &= lastWordMask(width);
+			out[i] = next;
+			count += Long.bitCount(next);
+		}
+		return count;
+	}
+
+	/**
+	 * Applies the rule to 64 cells at once. Every argument holds one of the
+	 * nine cells of the 3x3 neighborhood for all 64 bit positions. Rules
+	 * which are not totalistic are looked up cell by cell.
+	 */
+	static long evolve(long nw, long n, long ne, long w, long c, long e,
+			long sw, long s, long se, Rule rule) {
+		if (rule.isTotalistic())
+			return evolve(nw, n, ne, w, c, e, sw, s, se, rule.getLivingMask(),
+					rule.getDeadMask());
+
+		byte[] table = rule.getTable();
+		long result = 0;
+		for (int i = 0; i < 64; ++i) {
+			int index = (int) (((nw >>> i) & 1) << 8 | ((n >>> i) & 1) << 7
+					| ((ne >>> i) & 1) << 6 | ((w >>> i) & 1) << 5
+					| ((c >>> i) & 1) << 4 | ((e >>> i) & 1) << 3
+					| ((sw >>> i) & 1) << 2 | ((s >>> i) & 1) << 1
+					| ((se >>> i) & 1));
+			result |= (long) table[index] << i;
+		}
+		return result;
+	}
+
+	/**
+	 * Applies a totalistic rule to 64 cells at once. Every argument holds one of the
+	 * nine cells of the 3x3 neighborhood for all 64 bit positions.
+	 */
+	static long evolve(long nw, long n, long ne, long w, long c, long e,
+			long sw, long s, long se, int living, int dead) {
+		// Full adders for the rows above and below, half adder for the middle
+		long topSum = nw ^ n ^ ne;
+		long topCarry = (nw & n) | (ne & (nw ^ n));
+		long bottomSum = sw ^ s ^ se;
+		long bottomCarry = (sw & s) | (se & (sw ^ s));
+		long midSum = w ^ e;
+		long midCarry = w & e;
+
+		// Sum up the ones
+		long ones = topSum ^ bottomSum ^ midSum;
+		long onesCarry = (topSum & bottomSum) | (midSum & (topSum ^ bottomSum));
+
+		// Sum up the four carries of weight two
+		long twosSum = topCarry ^ bottomCarry ^ midCarry;
+		long twosCarry = (topCarry & bottomCarry)
+				| (midCarry & (topCarry ^ bottomCarry));
+		long twos = twosSum ^ onesCarry;
+		long fours = twosCarry ^ (twosSum & onesCarry);
+		long eights = twosCarry & twosSum & onesCarry;
+
+		long result = 0;
+		for (int count = 0; count <= 8; ++count) {
+			long select = 0;
+			if ((living & (1 << count)) != 0)
+				select |= c;
+			if ((dead & (1 << count)) != 0)
+				select |= ~c;
+			if (select == 0)
+				continue;
+
+			select &= (count & 1) != 0 ? ones : ~ones;
+			select &= (count & 2) != 0 ? twos : ~twos;
+			select &= (count & 4) != 0 ? fours : ~fours;
+			select &= (count & 8) != 0 ? eights : ~eights;
+			result |= select;
+		}
+		return result;
+	}
+
+	/**
+	 * Sets bits <code>from</code> to <code>to - 1</code> of a packed row
+	 */
+	static void setBits(long[] row, int from, int to) {
+		if (from >= to)
+			return;
+
+		int first = from >>> 6, last = (to - 1) >>> 6;
+		long firstMask = -1L << (from & 63);
+		long lastMask = -1L >>> (-to & 63);
+		if (first == last) {
+			row[first] |= firstMask & lastMask;
+			return;
+		}
+
+		row[first] |= firstMask;
+		for (int i = first + 1; i < last; ++i)
+			row[i] = -1L;
+		row[last] |= lastMask;
+	}
+
+	/**
+	 * Copies <code>width</code> bits of a packed row starting at bit
+	 * <code>from</code> to the beginning of <code>out</code>
+	 */
+	static void extractBits(long[] row, int from, long[] out, int width) {
+		int words = numWords(width);
+		int first = from >>> 6, shift = from & 63;
+		for (int i = 0; i < words; ++i) {
+			long word = first + i < row.length ? row[first + i] >>> shift : 0;
+			if (shift != 0 && first + i + 1 < row.length)
+				word |= row[first + i + 1] << (64 - shift);
+			out[i] = word;
+		}
+		if (words > 0)
+			out[words - 1] &= lastWordMask(width);
+	}
+
+	static int numWords(int width) {
+		return (width + 63) >>> 6;
+	}
+
+	/**
+	 * Mask of the valid bits in the last word of a row
+	 */
+	static long lastWordMask(int width) {
+		return -1L >>> (-width & 63);
+	}
+
+	private void countLiving() {
+		numLiving = 0;
+		for (int y = 0; y < boardHeight; ++y)
+			for (long word : board[y])
+				numLiving += Long.bitCount(word);
+	}
+
+	public int getNumGenerations() {
+		return numGenerations;
+	}
+
+	public int getNumLiving() {
+		return numLiving;
+	}
+
+	public int getBoardWidth() {
+		return boardWidth;
+	}
+
+	public int getBoardHeight() {
+		return boardHeight;
+	}
+
+	public void setBoardCell(int x, int y, int val) {
+		long bit = 1L << (x & 63);
+		long old = board[y][x >>> 6];
+		long word = val != 0 ? old | bit : old & ~bit;
+		board[y][x >>> 6] = word;
+		numLiving += Long.bitCount(word) - Long.bitCount(old);
+	}
+
+	public int getBoardCell(int x, int y) {
+		return (int) (board[y][x >>> 6] >>> (x & 63)) & 1;
+	}
+
+	public long[][] getBoard() {
+		return board;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
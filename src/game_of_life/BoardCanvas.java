@@ -8,17 +8,56 @@ import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
+/**
+ * Shows a part of the board. The view is moved by dragging with the middle
+ * mouse button or with the shift key held, and zoomed with the mouse wheel.
+ * Zoomed in every cell is drawn as a square of <code>cellSize</code>
+ * pixels, zoomed out every pixel covers 2^level x 2^level cells and shows
+ * their density, which is read from a {@link DensityMipmap}. The cost of a
+ * frame depends on the pixels shown, not on the size of the board.
+ */
 public class BoardCanvas extends JComponent implements MouseListener,
-		MouseMotionListener, ComponentListener {
+		MouseMotionListener, MouseWheelListener, ComponentListener {
+
+	private static final int MAX_CELL_SIZE = 32;
 
 	private Simulation simulation;
 
 	private boolean drawGrid;
-	
-	private int cellSize;
+
+	/*
+	 * View, written by the event thread and read by the renderer. Zoomed
+	 * out the cell size is 1 and the level positive.
+	 */
+
+	private volatile int cellSize;
+
+	private volatile int level;
+
+	private volatile int viewX;
+
+	private volatile int viewY;
+
+	/*
+	 * Start of a drag which moves the view
+	 */
+
+	private int dragX;
+
+	private int dragY;
+
+	private boolean dragging;
+
+	private final DensityMipmap mipmap = new DensityMipmap();
 	
 	private static final Color[] palette = { Color.BLACK, Color.GREEN,
 			new Color(0, 128, 0), Color.RED, Color.ORANGE, Color.CYAN, Color.YELLOW,
@@ -26,6 +65,38 @@ public class BoardCanvas extends JComponent implements MouseListener,
 
 	private static final Color gridColor = Color.GRAY;
 
+	private static final IndexColorModel colorModel = createColorModel();
+
+	private static final IndexColorModel densityColorModel = createDensityColorModel();
+
+	/*
+	 * Render buffers
+	 */
+
+	private BufferedImage frontImage;
+
+	private BufferedImage backImage;
+
+	/*
+	 * Cell size the front and back image were rendered with
+	 */
+
+	private int frontCellSize;
+
+	private int backCellSize;
+
+	private final Object frameLock = new Object();
+
+	private volatile boolean live;
+
+	private BufferedImage gridImage;
+
+	private int gridCellSize;
+
+	private int gridBoardWidth;
+
+	private int gridBoardHeight;
+
 	public BoardCanvas(Simulation simul, boolean grid, int size) {
 		simulation = simul;
 		drawGrid = grid;
@@ -33,19 +104,73 @@ public class BoardCanvas extends JComponent implements MouseListener,
 
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		addMouseWheelListener(this);
 		addComponentListener(this);
-		
-		updateBoardSize();
 	}
 	
+	/**
+	 * Zooms in to the given number of pixels per cell
+	 */
 	public void setCellSize(int size) {
 		cellSize = size;
-		updateBoardSize();
+		level = 0;
+		moveView(viewX, viewY);
 	}
 	
 	public void setSimulation(Simulation simul) {
 		simulation = simul;
-		updateBoardSize();
+		moveView(viewX, viewY);
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Zoomed out every pixel covers 2^level x 2^level cells
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Moves the top left corner of the view to the given cell. The view is
+	 * kept within the board.
+	 */
+	public void moveView(int x, int y) {
+		int width = simulation.getBoardWidth();
+		int height = simulation.getBoardHeight();
+		int cells = 1 << level;
+		viewX = Math.max(0, Math.min(x, width - getWidth() * cells / cellSize));
+		viewY = Math.max(0, Math.min(y, height - getHeight() * cells
+				/ cellSize));
+		repaint();
+	}
+
+	/**
+	 * Zooms in or out by one step, keeping the cell under the given pixel
+	 * in place
+	 */
+	public void zoom(boolean in, int pixelX, int pixelY) {
+		int x = viewX + (pixelX << level) / cellSize;
+		int y = viewY + (pixelY << level) / cellSize;
+
+		if (in) {
+			if (level > 0)
+				--level;
+			else if (cellSize < MAX_CELL_SIZE)
+				++cellSize;
+		} else {
+			int size = Math.max(simulation.getBoardWidth(),
+					simulation.getBoardHeight());
+			if (cellSize > 1)
+				--cellSize;
+			else if (size >> level > Math.min(getWidth(), getHeight()))
+				++level;
+		}
+
+		moveView(x - (pixelX << level) / cellSize, y - (pixelY << level)
+				/ cellSize);
 	}
 
 	public void setGrid(boolean flag) {
@@ -53,43 +178,212 @@ public class BoardCanvas extends JComponent implements MouseListener,
 		repaint();
 	}
 	
+	/**
+	 * While the canvas is live, the board is only rendered when the
+	 * simulation thread publishes a frame through {@link #renderFrame()}.
+	 * Painting then just draws the latest published frame.
+	 */
+	public void setLive(boolean flag) {
+		live = flag;
+	}
+
 	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
 		int width = getWidth();
 		int height = getHeight();
-		int boardWidth = simulation.getBoardWidth();
-		int boardHeight = simulation.getBoardHeight();
-		byte[][] board = simulation.getBoard();
 		
 		((Graphics2D) g).setBackground(Color.WHITE);
 		g.clearRect(0, 0, width, height);
 
-		for (int y = 0; y < boardHeight; ++y) {
-			for (int x = 0; x < boardWidth; ++x) {
-				if (board[y][x] == 0)
-					continue;
+		if (!live)
+			renderFrame();
+
+		synchronized (frameLock) {
+			if (frontImage == null)
+				return;
+
+			// One pixel per cell or block, scaled up by drawImage
+			int imageWidth = frontImage.getWidth();
+			int imageHeight = frontImage.getHeight();
+			g.drawImage(frontImage, 0, 0, imageWidth * frontCellSize,
+					imageHeight * frontCellSize, null);
+
+			if (drawGrid && frontImage.getColorModel() == colorModel)
+				g.drawImage(getGridImage(width, height, frontCellSize,
+						imageWidth, imageHeight), 0, 0, null);
+		}
+		Metrics.getInstance().painted(System.nanoTime() - start);
+	}
+
+	/**
+	 * Renders the visible part of the board into the back buffer and swaps
+	 * it with the front buffer. May be called from the simulation thread
+	 * between two generations.
+	 */
+	public void renderFrame() {
+		int boardWidth = simulation.getBoardWidth();
+		int boardHeight = simulation.getBoardHeight();
+		if (boardWidth <= 0 || boardHeight <= 0)
+			return;
+
+		int size = cellSize, lev = level;
+		int x0 = viewX >> lev, y0 = viewY >> lev;
+		int columns = ((boardWidth - 1) >> lev) + 1;
+		int rows = ((boardHeight - 1) >> lev) + 1;
+		int width = Math.min((getWidth() + size - 1) / size, columns - x0);
+		int height = Math.min((getHeight() + size - 1) / size, rows - y0);
+		if (width <= 0 || height <= 0)
+			return;
+
+		IndexColorModel model = lev == 0 ? colorModel : densityColorModel;
+		if (backImage == null || backImage.getWidth() != width
+				|| backImage.getHeight() != height
+				|| backImage.getColorModel() != model) {
+			backImage = new BufferedImage(width, height,
+					BufferedImage.TYPE_BYTE_INDEXED, model);
+		}
+
+		byte[] pixels = ((DataBufferByte) backImage.getRaster()
+				.getDataBuffer()).getData();
+		byte[][] board = simulation.getBoard();
+		if (lev == 0) {
+			// The cell values are used as indices into the color model
+			for (int y = 0; y < height; ++y)
+				System.arraycopy(board[y0 + y], x0, pixels, y * width, width);
+		} else if (lev < DensityMipmap.FIRST_LEVEL) {
+			renderDensities(board, boardWidth, boardHeight, lev, x0, y0,
+					width, height, pixels);
+		} else {
+			mipmap.update(simulation);
+			if (lev >= mipmap.getNumLevels())
+				return;
+			byte[] densities = mipmap.getDensities(lev);
+			for (int y = 0; y < height; ++y)
+				System.arraycopy(densities, (y0 + y) * columns + x0, pixels, y
+						* width, width);
+		}
+		backCellSize = size;
+
+		synchronized (frameLock) {
+			BufferedImage temp = frontImage;
+			frontImage = backImage;
+			backImage = temp;
+			int tempSize = frontCellSize;
+			frontCellSize = backCellSize;
+			backCellSize = tempSize;
+		}
+	}
 
-				g.setColor(palette[board[y][x] - 1]);
-				g.fillRect(x * cellSize, y * cellSize,
-						cellSize, cellSize);
+	/**
+	 * Counts the cells of small blocks directly, since the mipmap only
+	 * starts at {@link DensityMipmap#FIRST_LEVEL}
+	 */
+	private static void renderDensities(byte[][] board, int boardWidth,
+			int boardHeight, int level, int x0, int y0, int width,
+			int height, byte[] pixels) {
+		int block = 1 << level;
+		for (int y = 0; y < height; ++y) {
+			int cellY = (y0 + y) << level;
+			int cellYEnd = Math.min(cellY + block, boardHeight);
+			for (int x = 0; x < width; ++x) {
+				int cellX = (x0 + x) << level;
+				int cellXEnd = Math.min(cellX + block, boardWidth);
+				int count = 0;
+				for (int cy = cellY; cy < cellYEnd; ++cy) {
+					byte[] row = board[cy];
+					for (int cx = cellX; cx < cellXEnd; ++cx)
+						count += (-row[cx] >>> 31);
+				}
+				pixels[y * width + x] = DensityMipmap.toDensity(count, block
+						* block);
 			}
 		}
+	}
+
+	/**
+	 * The grid lines are drawn once into a transparent overlay, which is
+	 * reused until the size of the canvas or the board changes.
+	 */
+	private BufferedImage getGridImage(int width, int height, int cellSize,
+			int boardWidth, int boardHeight) {
+		if (gridImage != null && gridImage.getWidth() == width
+				&& gridImage.getHeight() == height && gridCellSize == cellSize
+				&& gridBoardWidth == boardWidth
+				&& gridBoardHeight == boardHeight)
+			return gridImage;
+
+		gridImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		gridCellSize = cellSize;
+		gridBoardWidth = boardWidth;
+		gridBoardHeight = boardHeight;
+
+		Graphics g = gridImage.createGraphics();
+		g.setColor(gridColor);
+
+		for (int y = 1; y < boardHeight; ++y)
+			g.drawLine(0, y * cellSize, width, y * cellSize);
 
-		if (drawGrid) {
-			g.setColor(gridColor);
+		for (int x = 1; x < boardWidth; ++x)
+			g.drawLine(x * cellSize, 0, x * cellSize, height);
 
-			for (int y = 1; y < boardHeight; ++y)
-				g.drawLine(0, y * cellSize, width, y * cellSize);
+		g.dispose();
+		return gridImage;
+	}
+
+	/**
+	 * Index 0 is the background, index n the color of a cell with value n
+	 */
+	private static IndexColorModel createColorModel() {
+		int size = palette.length + 1;
+		byte[] r = new byte[size];
+		byte[] g = new byte[size];
+		byte[] b = new byte[size];
+
+		r[0] = g[0] = b[0] = (byte) 255;
+		for (int i = 0; i < palette.length; ++i) {
+			r[i + 1] = (byte) palette[i].getRed();
+			g[i + 1] = (byte) palette[i].getGreen();
+			b[i + 1] = (byte) palette[i].getBlue();
+		}
+		return new IndexColorModel(8, size, r, g, b);
+	}
+
+	/**
+	 * Index d is the color of density d, from white to the color of living
+	 * cells. Sparse blocks are drawn lighter, but still visible.
+	 */
+	private static IndexColorModel createDensityColorModel() {
+		byte[] r = new byte[256];
+		byte[] g = new byte[256];
+		byte[] b = new byte[256];
 
-			for (int x = 1; x < boardWidth; ++x)
-				g.drawLine(x * cellSize, 0, x * cellSize,
-						height);
+		Color cell = palette[0];
+		r[0] = g[0] = b[0] = (byte) 255;
+		for (int i = 1; i < 256; ++i) {
+			float t = 0.25f + 0.75f * i / 255;
+			r[i] = (byte) (255 + (cell.getRed() - 255) * t);
+			g[i] = (byte) (255 + (cell.getGreen() - 255) * t);
+			b[i] = (byte) (255 + (cell.getBlue() - 255) * t);
 		}
+		return new IndexColorModel(8, 256, r, g, b);
 	}
 
 	public void mouseDragged(MouseEvent e) {
-		int x = e.getX() / cellSize;
-		int y = e.getY() / cellSize;
-		if (x < 0 || y < 0 || x >= simulation.getBoardWidth()
+		if (dragging) {
+			int x = viewX + ((dragX - e.getX()) << level) / cellSize;
+			int y = viewY + ((dragY - e.getY()) << level) / cellSize;
+			if (x != viewX || y != viewY) {
+				moveView(x, y);
+				dragX = e.getX();
+				dragY = e.getY();
+			}
+			return;
+		}
+
+		int x = viewX + (e.getX() << level) / cellSize;
+		int y = viewY + (e.getY() << level) / cellSize;
+		if (e.getX() < 0 || e.getY() < 0 || x >= simulation.getBoardWidth()
 				|| y >= simulation.getBoardHeight())
 			return;
 		
@@ -104,13 +398,22 @@ public class BoardCanvas extends JComponent implements MouseListener,
 		mouseDragged(e);
 	}
 	
-	public void componentResized(ComponentEvent e) {
-		updateBoardSize();
+	public void mousePressed(MouseEvent e) {
+		dragging = SwingUtilities.isMiddleMouseButton(e) || e.isShiftDown();
+		dragX = e.getX();
+		dragY = e.getY();
 	}
-	
-	private void updateBoardSize() {
-		simulation.setBoardSize(getWidth() / cellSize, getHeight() / cellSize);
-		repaint();
+
+	public void mouseReleased(MouseEvent e) {
+		dragging = false;
+	}
+
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		zoom(e.getWheelRotation() < 0, e.getX(), e.getY());
+	}
+
+	public void componentResized(ComponentEvent e) {
+		moveView(viewX, viewY);
 	}
 
 	/*
@@ -126,12 +429,7 @@ public class BoardCanvas extends JComponent implements MouseListener,
 	public void mouseMoved(MouseEvent e) {
 	}
 
-	public void mousePressed(MouseEvent e) {
-	}
 
-	public void mouseReleased(MouseEvent e) {
-	}
-	
 	public void componentHidden(ComponentEvent e) {
 	}
 	
@@ -0,0 +1,61 @@
+package game_of_life;
+
+/**
+ * Computes the inner cells of a row for {@link Simulation}, e.g. with SIMD
+ * instructions, see {@link VectorKernel}. Kernels only support totalistic
+ * rules, the cells at the left and right edge of the board are always
+ * computed by the simulation itself.
+ */
+interface CellKernel {
+
+	int SCRATCH_SIZE = 16;
+
+	/**
+	 * Results of the rows computed so far. Each call of
+	 * {@link CellKernel#step} adds to it.
+	 */
+	final class Result {
+
+		int living;
+
+		boolean changed;
+
+		long hash;
+
+		int xMin;
+
+		int xMax;
+
+		/**
+		 * Scratch space of the kernel, each thread has its own result
+		 */
+		final long[] scratch = new long[SCRATCH_SIZE];
+
+		void clear(int xEnd) {
+			living = 0;
+			changed = false;
+			hash = 0;
+			xMin = xEnd;
+			xMax = -1;
+		}
+	}
+
+	/**
+	 * Sets the new value of a dead and of a living cell with n neighbors,
+	 * which is 0 or the positive cell value
+	 */
+	void setRule(byte[] deadCells, byte[] livingCells);
+
+	/**
+	 * Computes cells <code>from</code> to <code>to - 1</code> of the next
+	 * generation into <code>out</code>, as far as whole vectors reach. The
+	 * range must not include the first and last cell of the row, since the
+	 * neighbors are not wrapped around.
+	 *
+	 * @param position y * width of the row, for the hash of flipped cells
+	 * @return first cell which was not computed
+	 */
+	int step(byte[] top, byte[] row, byte[] bottom, byte[] out, int from,
+			int to, long position, Result result);
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,259 @@
+package game_of_life;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Snapshot of a running simulation, which can be resumed exactly. Unlike an
+ * RLE file it keeps the board size, the position of the cells and the
+ * generation count.
+ *
+ * File format, gzip compressed:
+ * <ul>
+ * <li>magic <code>GOLC</code>, version</li>
+ * <li>width, height, rule, generation, population</li>
+ * <li>rows of packed bits, bit x &amp; 63 of word x / 64 holds cell x</li>
+ * </ul>
+ *
+ * Files are written to a temporary file, synced and renamed, then the
+ * directory is synced, so a crash or a restart of the host leaves either
+ * the previous or the new checkpoint intact.
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x474F4C43;
+
+	private static final int VERSION = 1;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final int width;
+
+	private final int height;
+
+	private final String rule;
+
+	private final long generation;
+
+	private final long population;
+
+	private final long[][] rows;
+
+	/*
+	 * { xMin, yMin, xMax, yMax } of the living cells, or null if the rows
+	 * have to be scanned for it
+	 */
+	private final int[] boundingBox;
+
+	public Checkpoint(int width, int height, String rule, long generation,
+			long population, long[][] rows) {
+		this(width, height, rule, generation, population, rows, null);
+	}
+
+	/**
+	 * @param boundingBox { xMin, yMin, xMax, yMax } of the living cells,
+	 *            { 0, 0, -1, -1 } if there are none, or null if unknown
+	 */
+	public Checkpoint(int width, int height, String rule, long generation,
+			long population, long[][] rows, int[] boundingBox) {
+		this.width = width;
+		this.height = height;
+		this.rule = rule;
+		this.generation = generation;
+		this.population = population;
+		this.rows = rows;
+		this.boundingBox = boundingBox;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public String getRule() {
+		return rule;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public long getPopulation() {
+		return population;
+	}
+
+	/**
+	 * Packed rows, see {@link BitSimulation}
+	 */
+	public long[][] getRows() {
+		return rows;
+	}
+
+	/**
+	 * Writes the bounding box of the living cells as RLE file, see
+	 * {@link RleWriter}. The rows are only scanned for the box if it was
+	 * not given to the constructor.
+	 */
+	public void writeRle(File file, ProgressListener listener)
+			throws IOException {
+		int[] box = boundingBox != null ? boundingBox : findBoundingBox();
+		final int xStart = box[0], yStart = box[1];
+		final int boxWidth = box[2] - box[0] + 1;
+
+		RleWriter writer = new RleWriter(file);
+		writer.setProgressListener(listener);
+		writer.write(rule, boxWidth, box[3] - box[1] + 1, new RleWriter.Rows() {
+			public void getRow(int y, long[] bits) {
+				BitSimulation.extractBits(rows[yStart + y], xStart, bits,
+						boxWidth);
+			}
+		});
+	}
+
+	private int[] findBoundingBox() {
+		int xMin = width, xMax = -1, yMin = height, yMax = -1;
+		for (int y = 0; y < height; ++y) {
+			long[] row = rows[y];
+			for (int i = 0; i < row.length; ++i) {
+				if (row[i] == 0)
+					continue;
+				xMin = Math.min(xMin, (i << 6) + Long.numberOfTrailingZeros(row[i]));
+				xMax = Math.max(xMax, (i << 6) + 63 - Long.numberOfLeadingZeros(row[i]));
+				yMin = Math.min(yMin, y);
+				yMax = y;
+			}
+		}
+		if (xMax < 0)
+			xMin = yMin = 0;
+		return new int[] { xMin, yMin, xMax, yMax };
+	}
+
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		boolean moved = false;
+		try {
+			writeData(temp);
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		} finally {
+			// A failed checkpoint leaves no temporary file behind
+			if (!moved)
+				temp.delete();
+		}
+		syncDirectory(file.getAbsoluteFile().getParentFile());
+	}
+
+	private void writeData(File file) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		DataOutputStream data = null;
+		try {
+			GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE) {
+				{
+					def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+			data = new DataOutputStream(new BufferedOutputStream(gzip,
+					BUFFER_SIZE));
+
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(width);
+			data.writeInt(height);
+			data.writeUTF(rule);
+			data.writeLong(generation);
+			data.writeLong(population);
+
+			ByteBuffer buffer = ByteBuffer.allocate(8 * BitSimulation
+					.numWords(width));
+			for (long[] row : rows) {
+				buffer.clear();
+				buffer.asLongBuffer().put(row);
+				data.write(buffer.array());
+			}
+
+			data.flush();
+			gzip.finish();
+			out.getFD().sync();
+		} finally {
+			// Closing the gzip stream also ends its Deflater
+			if (data != null)
+				data.close();
+			else
+				out.close();
+		}
+	}
+
+	/**
+	 * Makes the rename durable
+	 */
+	private static void syncDirectory(File dir) {
+		try {
+			FileChannel channel = FileChannel.open(dir.toPath(),
+					StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException ex) {
+			// Directories cannot be opened on every platform, e.g. Windows
+		}
+	}
+
+	public static Checkpoint read(File file) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE),
+				BUFFER_SIZE));
+		try {
+			if (data.readInt() != MAGIC)
+				throw new IOException(file + " is no checkpoint");
+			int version = data.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported checkpoint version "
+						+ version);
+
+			int width = data.readInt();
+			int height = data.readInt();
+			if (width < 1 || height < 1)
+				throw new IOException("Invalid board size " + width + "/"
+						+ height);
+			String rule = data.readUTF();
+			long generation = data.readLong();
+			long population = data.readLong();
+
+			int words = BitSimulation.numWords(width);
+			long[][] rows = new long[height][words];
+			ByteBuffer buffer = ByteBuffer.allocate(8 * words);
+			for (long[] row : rows) {
+				data.readFully(buffer.array());
+				buffer.clear();
+				buffer.asLongBuffer().get(row);
+			}
+
+			return new Checkpoint(width, height, rule, generation,
+					population, rows);
+		} finally {
+			data.close();
+		}
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
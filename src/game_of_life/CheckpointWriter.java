@@ -0,0 +1,91 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes checkpoints in a background thread, so the simulation only pauses
+ * for packing the board. Errors of a write are thrown by the next call.
+ */
+public class CheckpointWriter {
+
+	private final File file;
+
+	private final ExecutorService executor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Checkpoint writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private Future<Void> pending;
+
+	public CheckpointWriter(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Starts writing the checkpoint unless the previous one is still being
+	 * written
+	 *
+	 * @return false if the checkpoint was skipped
+	 */
+	public synchronized boolean submit(final Checkpoint checkpoint)
+			throws IOException {
+		if (pending != null) {
+			if (!pending.isDone())
+				return false;
+			finish();
+		}
+
+		pending = executor.submit(new Callable<Void>() {
+			public Void call() throws IOException {
+				long start = System.nanoTime();
+				checkpoint.write(file);
+				System.out.println("Checkpoint of generation "
+						+ checkpoint.getGeneration() + " written in "
+						+ (System.nanoTime() - start) / 1000000 + " ms");
+				return null;
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Waits until the last checkpoint is written
+	 */
+	public synchronized void finish() throws IOException {
+		if (pending == null)
+			return;
+
+		try {
+			pending.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Checkpoint interrupted", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			throw new IOException(ex.getCause());
+		} finally {
+			pending = null;
+		}
+	}
+
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
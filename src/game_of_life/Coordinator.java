@@ -0,0 +1,367 @@
+package game_of_life;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a simulation distributed over several worker processes on this
+ * machine, for boards which do not fit into one heap. The torus is split
+ * into horizontal strips of full width, each owned by a {@link StripWorker}.
+ * Since a strip only borders the strips above and below, a worker exchanges
+ * one halo row with each of them per generation.
+ *
+ * Every command is sent to all workers and completes when all of them have
+ * replied, which also serves as a barrier between batches of generations.
+ *
+ * Usage: <code>Coordinator [options]</code>
+ * <ul>
+ * <li>-p processes: number of workers (default 2)</li>
+ * <li>-i file: RLE file to load, every worker reads its own rows</li>
+ * <li>-o file: base name of the RLE slices to save, slice i is written to
+ * <code>file-i.rle</code></li>
+ * <li>-w width, -h height: board size</li>
+ * <li>-r rule: generation rule, overrides the rule of the file</li>
+ * <li>-n generations: number of generations</li>
+ * <li>-b generations: generations between barriers (default 100)</li>
+ * <li>-s seed: seed of the random board, the same seed gives the same
+ * board as with {@link BatchRunner} and any number of workers</li>
+ * <li>-d density: share of living cells of the random board (default
+ * 0.5)</li>
+ * <li>-m size: maximum heap of a worker, e.g. 2g</li>
+ * </ul>
+ */
+public class Coordinator {
+
+	private static final int DEFAULT_SIZE = 500;
+
+	private static final int DEFAULT_GENERATIONS = 1000;
+
+	private static final int DEFAULT_BATCH = 100;
+
+	private static final int DEFAULT_WORKERS = 2;
+
+	private static final int BUFFER_SIZE = 1 << 12;
+
+	private static final int STOP_TIMEOUT = 10;
+
+	private int numWorkers = DEFAULT_WORKERS;
+
+	private File inputFile;
+
+	private File outputFile;
+
+	private int width = DEFAULT_SIZE;
+
+	private int height = DEFAULT_SIZE;
+
+	private String rule;
+
+	private long generations = DEFAULT_GENERATIONS;
+
+	private long batch = DEFAULT_BATCH;
+
+	private long seed = System.nanoTime();
+
+	private double density = 0.5;
+
+	private String heapSize;
+
+	/**
+	 * Connection to a worker process
+	 */
+	private static class Worker {
+
+		final Process process;
+
+		Socket socket;
+
+		DataInputStream in;
+
+		DataOutputStream out;
+
+		int haloPort;
+
+		Worker(Process process) {
+			this.process = process;
+		}
+	}
+
+	private final List<Worker> workers = new ArrayList<Worker>();
+
+	public Coordinator(String[] argv) {
+		for (int n = 0; n < argv.length; ++n) {
+			String arg = argv[n];
+			if (n + 1 >= argv.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = argv[++n];
+
+			if (arg.equals("-p"))
+				numWorkers = Integer.parseInt(value);
+			else if (arg.equals("-i"))
+				inputFile = new File(value);
+			else if (arg.equals("-o"))
+				outputFile = new File(value);
+			else if (arg.equals("-w"))
+				width = Integer.parseInt(value);
+			else if (arg.equals("-h"))
+				height = Integer.parseInt(value);
+			else if (arg.equals("-r"))
+				rule = value;
+			else if (arg.equals("-n"))
+				generations = Long.parseLong(value);
+			else if (arg.equals("-b"))
+				batch = Long.parseLong(value);
+			else if (arg.equals("-s"))
+				seed = Long.parseLong(value);
+			else if (arg.equals("-d"))
+				density = Double.parseDouble(value);
+			else if (arg.equals("-m"))
+				heapSize = value;
+			else
+				throw new IllegalArgumentException("Unknown option " + arg);
+		}
+
+		if (numWorkers < 1 || numWorkers > height)
+			throw new IllegalArgumentException("Invalid number of workers");
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("Invalid board size");
+		if (batch < 1)
+			throw new IllegalArgumentException("Invalid batch size");
+		if (!(density >= 0 && density <= 1))
+			throw new IllegalArgumentException("Invalid density " + density);
+		if (rule != null)
+			Rule.parse(rule);
+	}
+
+	public void run() throws IOException {
+		ServerSocket server = new ServerSocket(0, numWorkers,
+				InetAddress.getLoopbackAddress());
+		try {
+			startWorkers(server.getLocalPort());
+			for (Worker worker : workers)
+				accept(server);
+		} catch (IOException ex) {
+			stopWorkers();
+			throw ex;
+		} finally {
+			server.close();
+		}
+
+		try {
+			simulate();
+			for (Worker worker : workers)
+				worker.out.writeInt(StripWorker.QUIT);
+			flush();
+		} finally {
+			stopWorkers();
+		}
+	}
+
+	private void startWorkers(int port) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java";
+		for (int i = 0; i < numWorkers; ++i) {
+			List<String> command = new ArrayList<String>();
+			command.add(java);
+			if (heapSize != null)
+				command.add("-Xmx" + heapSize);
+			command.add("-Djava.awt.headless=true");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(StripWorker.class.getName());
+			command.add(Integer.toString(port));
+
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.inheritIO();
+			workers.add(new Worker(builder.start()));
+		}
+	}
+
+	/**
+	 * Workers are numbered in the order they connect
+	 */
+	private void accept(ServerSocket server) throws IOException {
+		Socket socket = server.accept();
+		socket.setTcpNoDelay(true);
+		for (Worker worker : workers) {
+			if (worker.socket == null) {
+				worker.socket = socket;
+				worker.in = new DataInputStream(new BufferedInputStream(
+						socket.getInputStream(), BUFFER_SIZE));
+				worker.out = new DataOutputStream(new BufferedOutputStream(
+						socket.getOutputStream(), BUFFER_SIZE));
+				worker.haloPort = worker.in.readInt();
+				return;
+			}
+		}
+	}
+
+	private void simulate() throws IOException {
+		String initialRule = rule != null ? rule : "23/3";
+		for (int i = 0; i < numWorkers; ++i) {
+			DataOutputStream out = workers.get(i).out;
+			out.writeInt(StripWorker.INIT);
+			out.writeInt(i);
+			out.writeInt(numWorkers);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(getStripStart(i));
+			out.writeInt(getStripStart(i + 1));
+			out.writeUTF(initialRule);
+			out.writeInt(workers.get((i + 1) % numWorkers).haloPort);
+		}
+		flush();
+		long memory = 0;
+		for (Worker worker : workers)
+			memory += worker.in.readLong();
+		System.out.println(numWorkers + " workers, board " + width + "x"
+				+ height + ", " + (memory >> 20) + " MiB");
+
+		long numLiving;
+		if (inputFile != null) {
+			System.out.println("Reading file " + inputFile);
+			for (Worker worker : workers) {
+				worker.out.writeInt(StripWorker.LOAD);
+				worker.out.writeUTF(inputFile.getPath());
+			}
+			flush();
+			String fileRule = null;
+			numLiving = 0;
+			for (Worker worker : workers) {
+				fileRule = worker.in.readUTF();
+				numLiving += worker.in.readLong();
+			}
+			System.out.println("Rule " + fileRule);
+		} else {
+			for (Worker worker : workers) {
+				worker.out.writeInt(StripWorker.RANDOMIZE);
+				worker.out.writeLong(seed);
+				worker.out.writeDouble(density);
+			}
+			numLiving = collect();
+		}
+
+		if (rule != null) {
+			for (Worker worker : workers) {
+				worker.out.writeInt(StripWorker.SET_RULE);
+				worker.out.writeUTF(rule);
+			}
+			numLiving = collect();
+		}
+		System.out.println("Generation 0, living: " + numLiving);
+
+		long numGenerations = 0;
+		long start = System.nanoTime();
+		while (numGenerations < generations) {
+			long n = Math.min(batch, generations - numGenerations);
+			for (Worker worker : workers) {
+				worker.out.writeInt(StripWorker.GENERATE);
+				worker.out.writeLong(n);
+			}
+			numLiving = collect();
+			numGenerations += n;
+			System.out.println("Generation " + numGenerations + ", living: "
+					+ numLiving);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("Generations: " + numGenerations + ", living: "
+				+ numLiving);
+		System.out.println("Wall time: " + seconds + " s");
+		System.out.println("Generations/s: " + numGenerations / seconds);
+		System.out.println("Cells/s: " + (double) width * height
+				* numGenerations / seconds);
+
+		if (outputFile != null) {
+			for (int i = 0; i < numWorkers; ++i) {
+				File slice = getSliceFile(i);
+				System.out.println("Writing rows " + getStripStart(i) + " to "
+						+ (getStripStart(i + 1) - 1) + " to " + slice);
+				workers.get(i).out.writeInt(StripWorker.SAVE);
+				workers.get(i).out.writeUTF(slice.getPath());
+			}
+			collect();
+		}
+	}
+
+	/**
+	 * First row of strip i, strip heights differ by at most one
+	 */
+	private int getStripStart(int i) {
+		return (int) ((long) i * height / numWorkers);
+	}
+
+	private File getSliceFile(int i) {
+		String name = outputFile.getPath();
+		if (name.endsWith(".rle"))
+			name = name.substring(0, name.length() - 4);
+		return new File(name + "-" + i + ".rle");
+	}
+
+	/**
+	 * Waits for all workers to finish the last command
+	 *
+	 * @return total population
+	 */
+	private long collect() throws IOException {
+		flush();
+		long numLiving = 0;
+		for (Worker worker : workers)
+			numLiving += worker.in.readLong();
+		return numLiving;
+	}
+
+	private void flush() throws IOException {
+		for (Worker worker : workers)
+			worker.out.flush();
+	}
+
+	private void stopWorkers() {
+		for (Worker worker : workers) {
+			try {
+				if (worker.socket != null)
+					worker.socket.close();
+			} catch (IOException ex) {
+				// Ignore, the process is stopped anyway
+			}
+		}
+		for (Worker worker : workers) {
+			try {
+				if (!worker.process.waitFor(STOP_TIMEOUT, TimeUnit.SECONDS))
+					worker.process.destroy();
+			} catch (InterruptedException ex) {
+				worker.process.destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public static void main(String[] argv) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		Coordinator coordinator;
+		try {
+			coordinator = new Coordinator(argv);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: Coordinator [-p processes]"
+					+ " [-i input.rle] [-o output.rle] [-w width] [-h height]"
+					+ " [-r rule] [-n generations] [-b batch] [-s seed]"
+					+ " [-d density] [-m heap]");
+			System.exit(1);
+			return;
+		}
+		coordinator.run();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,142 @@
+package game_of_life;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Detects still lifes and oscillators by remembering the board hashes of
+ * the last generations. {@link #update()} has to be called after every
+ * generation. A board which repeats a hash of at most
+ * <code>maxPeriod</code> generations ago is considered periodic.
+ *
+ * With verification the board is copied on a hash match and compared once
+ * the period has elapsed again, so hash collisions are ruled out at the
+ * cost of running one more period.
+ */
+public class CycleDetector {
+
+	private final Simulation simulation;
+
+	private final int maxPeriod;
+
+	private final boolean verify;
+
+	/*
+	 * Ring buffer of the last hashes and the latest generation of each hash
+	 */
+
+	private final long[] hashes;
+
+	private final long[] generations;
+
+	private final Map<Long, Long> seen = new HashMap<Long, Long>();
+
+	/*
+	 * Candidate cycle waiting for verification
+	 */
+
+	private BitSet candidate;
+
+	private long candidateGeneration;
+
+	private long candidateStart;
+
+	/*
+	 * Detected cycle
+	 */
+
+	private int period;
+
+	private long start = -1;
+
+	public CycleDetector(Simulation simulation, int maxPeriod, boolean verify) {
+		if (maxPeriod < 1)
+			throw new IllegalArgumentException("Period must be at least 1");
+		this.simulation = simulation;
+		this.maxPeriod = maxPeriod;
+		this.verify = verify;
+		hashes = new long[maxPeriod + 1];
+		generations = new long[maxPeriod + 1];
+		Arrays.fill(generations, -1);
+		update();
+	}
+
+	/**
+	 * Records the current generation
+	 *
+	 * @return true if the board is periodic
+	 */
+	public boolean update() {
+		if (period > 0)
+			return true;
+
+		long generation = simulation.getNumGenerations();
+		long hash = simulation.getHash();
+
+		if (candidate != null
+				&& generation - candidateGeneration == candidateGeneration
+						- candidateStart) {
+			if (simulation.getLivingCells().equals(candidate)) {
+				found(candidateStart, candidateGeneration);
+				return true;
+			}
+			// Hash collision
+			candidate = null;
+		}
+
+		// Forget the hash which drops out of the ring buffer
+		int slot = (int) (generation % hashes.length);
+		Long old = seen.get(hashes[slot]);
+		if (old != null && old == generations[slot])
+			seen.remove(hashes[slot]);
+
+		Long last = seen.get(hash);
+		if (last != null && candidate == null) {
+			if (!verify) {
+				found(last, generation);
+				return true;
+			}
+			candidate = simulation.getLivingCells();
+			candidateGeneration = generation;
+			candidateStart = last;
+		}
+
+		hashes[slot] = hash;
+		generations[slot] = generation;
+		seen.put(hash, generation);
+		return false;
+	}
+
+	/**
+	 * The board of generation <code>start</code> repeats in generation
+	 * <code>repeat</code>
+	 */
+	private void found(long start, long repeat) {
+		this.start = start;
+		period = (int) (repeat - start);
+		System.out.println("Cycle detected: period " + period
+				+ " since generation " + start);
+	}
+
+	/**
+	 * Period of the detected cycle, 1 for still lifes, or 0 if the board is
+	 * not known to be periodic
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * First generation of the detected cycle, or -1
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	public int getMaxPeriod() {
+		return maxPeriod;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
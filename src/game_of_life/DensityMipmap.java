@@ -0,0 +1,221 @@
+package game_of_life;
+
+/**
+ * Pyramid of cell densities for drawing zoomed out views. At level l every
+ * entry covers a block of 2^l x 2^l cells and holds the share of living
+ * cells, scaled to 0..255. Levels below {@link #FIRST_LEVEL} are not stored,
+ * they are cheap enough to compute from the board.
+ *
+ * The pyramid is updated from the tiles of the {@link Simulation} which
+ * changed since the last update, so the cost does not grow with the board
+ * size while only a small part of the board is active.
+ */
+final class DensityMipmap {
+
+	/**
+	 * Blocks of 8x8 cells
+	 */
+	static final int FIRST_LEVEL = 3;
+
+	/**
+	 * Level of the blocks which cover exactly one tile
+	 */
+	private static final int TILE_LEVEL = Integer
+			.numberOfTrailingZeros(Simulation.TILE_SIZE);
+
+	private int boardWidth;
+
+	private int boardHeight;
+
+	/*
+	 * Level FIRST_LEVEL + i
+	 */
+
+	private byte[][] densities = new byte[0][];
+
+	private int[] widths;
+
+	private int[] heights;
+
+	private long modification = -1;
+
+	/**
+	 * Changed entries of the level which is propagated to its parents
+	 */
+	private boolean[] changed;
+
+	private boolean[] parentChanged;
+
+	/**
+	 * Brings the pyramid up to date with the board
+	 */
+	void update(Simulation simulation) {
+		int width = simulation.getBoardWidth(), height = simulation
+				.getBoardHeight();
+		boolean rebuild = width != boardWidth || height != boardHeight;
+		if (rebuild)
+			allocate(width, height);
+		// Read before the scan, tiles stamped during the scan are newer and
+		// are updated the next time
+		long current = simulation.getModification();
+		if (!rebuild && current == modification)
+			return;
+
+		byte[][] board = simulation.getBoard();
+		int tilesX = getWidth(TILE_LEVEL), tilesY = getHeight(TILE_LEVEL);
+		for (int ty = 0; ty < tilesY; ++ty) {
+			for (int tx = 0; tx < tilesX; ++tx) {
+				int tile = ty * tilesX + tx;
+				changed[tile] = rebuild
+						|| simulation.getTileModification(tile) > modification;
+				if (changed[tile])
+					updateTile(board, tx, ty);
+			}
+		}
+		modification = current;
+
+		// Propagate the changed tiles to the upper levels
+		for (int level = TILE_LEVEL + 1; level < getNumLevels(); ++level) {
+			int w = getWidth(level), h = getHeight(level);
+			int childWidth = getWidth(level - 1);
+			for (int y = 0; y < h; ++y) {
+				for (int x = 0; x < w; ++x) {
+					int child = 2 * y * childWidth + 2 * x;
+					boolean any = changed[child];
+					if (2 * x + 1 < childWidth)
+						any |= changed[child + 1];
+					if (2 * y + 1 < getHeight(level - 1)) {
+						any |= changed[child + childWidth];
+						if (2 * x + 1 < childWidth)
+							any |= changed[child + childWidth + 1];
+					}
+
+					parentChanged[y * w + x] = any;
+					if (any)
+						updateEntry(level, x, y);
+				}
+			}
+
+			boolean[] temp = changed;
+			changed = parentChanged;
+			parentChanged = temp;
+		}
+	}
+
+	private void allocate(int width, int height) {
+		boardWidth = width;
+		boardHeight = height;
+
+		int numLevels = FIRST_LEVEL;
+		while ((width - 1) >> numLevels > 0 || (height - 1) >> numLevels > 0)
+			++numLevels;
+		numLevels = Math.max(numLevels + 1, TILE_LEVEL + 1);
+
+		densities = new byte[numLevels - FIRST_LEVEL][];
+		widths = new int[numLevels - FIRST_LEVEL];
+		heights = new int[numLevels - FIRST_LEVEL];
+		for (int i = 0; i < densities.length; ++i) {
+			int level = FIRST_LEVEL + i;
+			widths[i] = ((width - 1) >> level) + 1;
+			heights[i] = ((height - 1) >> level) + 1;
+			densities[i] = new byte[widths[i] * heights[i]];
+		}
+
+		int tiles = getWidth(TILE_LEVEL) * getHeight(TILE_LEVEL);
+		changed = new boolean[tiles];
+		parentChanged = new boolean[tiles];
+	}
+
+	/**
+	 * Recomputes the levels up to the tile level within one tile
+	 */
+	private void updateTile(byte[][] board, int tx, int ty) {
+		int size = 1 << (TILE_LEVEL - FIRST_LEVEL);
+		int xStart = tx * size, yStart = ty * size;
+		int xEnd = Math.min(xStart + size, getWidth(FIRST_LEVEL));
+		int yEnd = Math.min(yStart + size, getHeight(FIRST_LEVEL));
+
+		byte[] first = densities[0];
+		int blockSize = 1 << FIRST_LEVEL;
+		int maxCount = blockSize * blockSize;
+		for (int y = yStart; y < yEnd; ++y) {
+			int cellY = y << FIRST_LEVEL;
+			int cellYEnd = Math.min(cellY + blockSize, boardHeight);
+			for (int x = xStart; x < xEnd; ++x) {
+				int cellX = x << FIRST_LEVEL;
+				int cellXEnd = Math.min(cellX + blockSize, boardWidth);
+				int count = 0;
+				for (int cy = cellY; cy < cellYEnd; ++cy) {
+					byte[] row = board[cy];
+					for (int cx = cellX; cx < cellXEnd; ++cx)
+						count += (-row[cx] >>> 31);
+				}
+				first[y * getWidth(FIRST_LEVEL) + x] = toDensity(count,
+						maxCount);
+			}
+		}
+
+		for (int level = FIRST_LEVEL + 1; level <= TILE_LEVEL; ++level) {
+			int shift = level - FIRST_LEVEL;
+			int xEndLevel = Math.min(((xEnd - 1) >> shift) + 1,
+					getWidth(level));
+			int yEndLevel = Math.min(((yEnd - 1) >> shift) + 1,
+					getHeight(level));
+			for (int y = yStart >> shift; y < yEndLevel; ++y)
+				for (int x = xStart >> shift; x < xEndLevel; ++x)
+					updateEntry(level, x, y);
+		}
+	}
+
+	/**
+	 * Averages the four children of an entry, missing children at the edge
+	 * of the board count as empty
+	 */
+	private void updateEntry(int level, int x, int y) {
+		byte[] children = densities[level - 1 - FIRST_LEVEL];
+		int childWidth = getWidth(level - 1), childHeight = getHeight(level - 1);
+		int cx = 2 * x, cy = 2 * y;
+
+		int sum = children[cy * childWidth + cx] & 0xFF;
+		if (cx + 1 < childWidth)
+			sum += children[cy * childWidth + cx + 1] & 0xFF;
+		if (cy + 1 < childHeight) {
+			sum += children[(cy + 1) * childWidth + cx] & 0xFF;
+			if (cx + 1 < childWidth)
+				sum += children[(cy + 1) * childWidth + cx + 1] & 0xFF;
+		}
+		densities[level - FIRST_LEVEL][y * getWidth(level) + x] = (byte) ((sum + 3) / 4);
+	}
+
+	/**
+	 * Density of <code>count</code> living cells out of <code>max</code>,
+	 * at least 1 if any cell lives
+	 */
+	static byte toDensity(int count, int max) {
+		return (byte) ((count * 255 + max - 1) / max);
+	}
+
+	/**
+	 * Number of levels including the levels which are not stored. The
+	 * highest level has a single entry.
+	 */
+	int getNumLevels() {
+		return FIRST_LEVEL + densities.length;
+	}
+
+	int getWidth(int level) {
+		return widths[level - FIRST_LEVEL];
+	}
+
+	int getHeight(int level) {
+		return heights[level - FIRST_LEVEL];
+	}
+
+	/**
+	 * Densities of a level row by row, for levels from {@link #FIRST_LEVEL}
+	 */
+	byte[] getDensities(int level) {
+		return densities[level - FIRST_LEVEL];
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -8,8 +8,14 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -20,12 +26,19 @@ import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.ProgressMonitor;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.border.EtchedBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileFilter;
 
 public class GameOfLife extends JFrame implements ActionListener, Runnable {
@@ -36,6 +49,21 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 
 	private static final int DEFAULT_CELLSIZE = 1;
 
+	private static final int DEFAULT_BOARDSIZE = 500;
+
+	/**
+	 * Largest side of the board. The canvas draws the array engine, which
+	 * keeps two byte boards, 2 GB at this size, and counts living cells and
+	 * history indices in int, so 2^30 cells are its limit. Boards of 100000
+	 * x 100000 cells would need 20 GB of heap and long counters, they are
+	 * left to the off-heap engine of the BatchRunner.
+	 */
+	private static final int MAX_BOARDSIZE = 1 << 15;
+
+	private static final int DEFAULT_FRAMERATE = 25;
+
+	private static final int MAX_CYCLE_PERIOD = 100;
+
 	/*
 	 * Simulation
 	 */
@@ -58,6 +86,14 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 
 	private JSpinner stepsSpinner;
 
+	private JSpinner generationsPerFrameSpinner;
+
+	private JSpinner frameRateSpinner;
+
+	private JCheckBox maxSpeedCheckBox;
+
+	private JCheckBox stopOnCycleCheckBox;
+
 	private JButton generateButton;
 
 	/*
@@ -68,6 +104,28 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 
 	private JButton clearButton;
 
+	private JSpinner boardWidthSpinner;
+
+	private JSpinner boardHeightSpinner;
+
+	private JButton boardSizeButton;
+
+	/*
+	 * Group History
+	 */
+
+	private History history;
+
+	private JCheckBox historyCheckBox;
+
+	private JButton backButton;
+
+	private JButton forwardButton;
+
+	private JSlider historySlider;
+
+	private boolean updatingSlider;
+
 	/*
 	 * Group Draw
 	 */
@@ -84,7 +142,27 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 
 	private Thread generateThread;
 
-	private boolean generateRunning;
+	/*
+	 * Background job which loads or saves a file, only one at a time
+	 */
+
+	private SwingWorker<?, ?> fileJob;
+
+	private boolean fileJobLoads;
+
+	private volatile boolean generateRunning;
+
+	private volatile int stepsLeft;
+
+	/*
+	 * Frame timer, picks up the latest frame of the simulation thread
+	 */
+
+	private Timer frameTimer;
+
+	private final AtomicBoolean frameRequested = new AtomicBoolean();
+
+	private final Semaphore frameTick = new Semaphore(0);
 
 	/*
 	 * Menu
@@ -97,6 +175,12 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 
 	private JMenuItem saveMenuItem;
 
+	private JMenuItem libraryMenuItem;
+
+	private JMenuItem openCheckpointMenuItem;
+
+	private JMenuItem saveCheckpointMenuItem;
+
 	private JMenuItem exitMenuItem;
 
 	/*
@@ -105,6 +189,10 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 
 	private JFileChooser fileChooser;
 
+	private JFileChooser checkpointChooser;
+
+	private PatternLibraryDialog libraryDialog;
+
 	public GameOfLife(String[] argv) throws IOException {
 		// Exit on close
 		addWindowListener(new WindowAdapter() {
@@ -114,6 +202,8 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 		});
 
 		simulation = new Simulation();
+		simulation.setBoardSize(DEFAULT_BOARDSIZE, DEFAULT_BOARDSIZE);
+		history = new History(simulation);
 		
 		fileChooser = new JFileChooser(new File(".").getAbsolutePath());
 		fileChooser.setFileFilter(new FileFilter() {
@@ -133,6 +223,10 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 			}
 		});
 
+		checkpointChooser = new JFileChooser(new File(".").getAbsolutePath());
+
+		frameTimer = new Timer(1000 / DEFAULT_FRAMERATE, this);
+
 		// Create GUI
 		createMenu();
 		getContentPane().add(createContentPane());
@@ -158,6 +252,18 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 		saveMenuItem.addActionListener(this);
 		menuFile.add(saveMenuItem);
 
+		libraryMenuItem = new JMenuItem("Musterbibliothek");
+		libraryMenuItem.addActionListener(this);
+		menuFile.add(libraryMenuItem);
+
+		openCheckpointMenuItem = new JMenuItem("Zustand laden");
+		openCheckpointMenuItem.addActionListener(this);
+		menuFile.add(openCheckpointMenuItem);
+
+		saveCheckpointMenuItem = new JMenuItem("Zustand speichern");
+		saveCheckpointMenuItem.addActionListener(this);
+		menuFile.add(saveCheckpointMenuItem);
+
 		exitMenuItem = new JMenuItem("Beenden");
 		exitMenuItem.addActionListener(this);
 		menuFile.add(exitMenuItem);
@@ -217,7 +323,15 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 				new Insets(3, 3, 3, 3), // external padding
 				0, 0)); // inner padding
 		
-		panel.add(createDrawGroup(), new GridBagConstraints(0, 2, // x,y
+		panel.add(createHistoryGroup(), new GridBagConstraints(0, 2, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.BOTH, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		panel.add(createDrawGroup(), new GridBagConstraints(0, 3, // x,y
 				1, 1, // w,h
 				1, 1, // weightx, weighty
 				GridBagConstraints.NORTHWEST, // anchor
@@ -320,13 +434,133 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 				new Insets(3, 3, 3, 3), // external padding
 				0, 0)); // inner padding
 
+		/*
+		 * Frame rate
+		 */
+
+		panel.add(new JLabel("Generationen/Bild:"), new GridBagConstraints(0, 2, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.NONE, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		generationsPerFrameSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 10000, 1));
+		panel.add(generationsPerFrameSpinner, new GridBagConstraints(1, 2, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		panel.add(new JLabel("Bilder/s:"), new GridBagConstraints(0, 3, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.NONE, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		frameRateSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_FRAMERATE, 1, 100, 1));
+		panel.add(frameRateSpinner, new GridBagConstraints(1, 3, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		maxSpeedCheckBox = new JCheckBox("Maximale Geschwindigkeit", false);
+		panel.add(maxSpeedCheckBox, new GridBagConstraints(0, 4, // x,y
+				2, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		stopOnCycleCheckBox = new JCheckBox("Bei Zyklus anhalten", false);
+		panel.add(stopOnCycleCheckBox, new GridBagConstraints(0, 5, // x,y
+				2, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
 		/*
 		 * Generate button
 		 */
 
 		generateButton = new JButton("Simulieren");
 		generateButton.addActionListener(this);
-		panel.add(generateButton, new GridBagConstraints(0, 2, // x,y
+		panel.add(generateButton, new GridBagConstraints(0, 6, // x,y
+				2, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		return panel;
+	}
+
+
+	private JPanel createHistoryGroup() {
+		JPanel panel = new JPanel(new GridBagLayout());
+		panel.setBorder(BorderFactory.createTitledBorder("Verlauf"));
+
+		// Off by default, recording costs time in every generation
+		historyCheckBox = new JCheckBox("Verlauf aufzeichnen", false);
+		panel.add(historyCheckBox, new GridBagConstraints(0, 0, // x,y
+				2, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		/*
+		 * Step buttons
+		 */
+
+		backButton = new JButton("Zurück");
+		backButton.addActionListener(this);
+		panel.add(backButton, new GridBagConstraints(0, 1, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		forwardButton = new JButton("Vor");
+		forwardButton.addActionListener(this);
+		panel.add(forwardButton, new GridBagConstraints(1, 1, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		/*
+		 * Slider over the recorded generations
+		 */
+
+		historySlider = new JSlider(0, 0, 0);
+		historySlider.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				if (updatingSlider || generateRunning)
+					return;
+				history.seek(history.getFirstGeneration()
+						+ historySlider.getValue());
+				canvas.repaint();
+			}
+		});
+		panel.add(historySlider, new GridBagConstraints(0, 2, // x,y
 				2, 1, // w,h
 				1, 1, // weightx, weighty
 				GridBagConstraints.NORTHWEST, // anchor
@@ -337,6 +571,18 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 		return panel;
 	}
 
+	/**
+	 * Adjusts the slider to the recorded generations
+	 */
+	private void updateHistorySlider() {
+		long first = history.getFirstGeneration();
+		updatingSlider = true;
+		historySlider.setMaximum((int) Math.min(history.getLastGeneration()
+				- first, Integer.MAX_VALUE));
+		historySlider.setValue((int) Math.min(history.getGeneration() - first,
+				Integer.MAX_VALUE));
+		updatingSlider = false;
+	}
 
 	private JPanel createBoardGroup() {
 		JPanel panel = new JPanel(new GridBagLayout());
@@ -370,14 +616,70 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 				new Insets(3, 3, 3, 3), // external padding
 				0, 0)); // inner padding
 
+		/*
+		 * Board size, independent of the size of the canvas
+		 */
+
+		boardWidthSpinner = new JSpinner(new SpinnerNumberModel(
+				DEFAULT_BOARDSIZE, 1, MAX_BOARDSIZE, 100));
+		panel.add(boardWidthSpinner, new GridBagConstraints(0, 2, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		boardHeightSpinner = new JSpinner(new SpinnerNumberModel(
+				DEFAULT_BOARDSIZE, 1, MAX_BOARDSIZE, 100));
+		panel.add(boardHeightSpinner, new GridBagConstraints(0, 3, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
+		boardSizeButton = new JButton("Feldgröße");
+		boardSizeButton.addActionListener(this);
+		panel.add(boardSizeButton, new GridBagConstraints(0, 4, // x,y
+				1, 1, // w,h
+				1, 1, // weightx, weighty
+				GridBagConstraints.NORTHWEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+
 		return panel;
 	}
 	
 	public void actionPerformed(ActionEvent e) {
 		Object source = e.getSource();
 		
+		// Show the latest frame
+		if (source == frameTimer) {
+			if (frameTimer.isRunning()) {
+				generateButton.setText("Anhalten " + stepsLeft);
+				canvas.repaint();
+			}
+			frameRequested.set(true);
+			if (frameTick.availablePermits() == 0)
+				frameTick.release();
+		}
+		// Step back
+		else if (source == backButton) {
+			history.back();
+			updateHistorySlider();
+			canvas.repaint();
+		}
+		// Step forward
+		else if (source == forwardButton) {
+			history.generate();
+			updateHistorySlider();
+			canvas.repaint();
+		}
 		// Randomize
-		if (source == randomizeButton) {
+		else if (source == randomizeButton) {
 			simulation.randomizeBoard();
 			canvas.repaint();
 		}
@@ -389,6 +691,11 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 				generateButton.setText("Anhalten");
 				enableElements();
 
+				int rate = ((Integer) frameRateSpinner.getValue()).intValue();
+				frameTimer.setDelay(1000 / rate);
+				frameTimer.start();
+				canvas.setLive(true);
+
 				generateThread = new Thread(this);
 				generateThread.start();
 			}
@@ -400,25 +707,32 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 		}
 		// Save board
 		else if (source == saveMenuItem) {
-			if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-				try {
-					simulation.saveFile(fileChooser.getSelectedFile());
-				} catch (IOException ex) {
-					ex.printStackTrace();
-				}
-			}
+			if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+				saveInBackground(fileChooser.getSelectedFile(), false);
 		}
 		// Open board
 		else if (source == openMenuItem) {
-			if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-				try {
-					simulation.readFile(fileChooser.getSelectedFile());
-					ruleTextField.setText(simulation.getRule());
-					canvas.repaint();
-				} catch (IOException ex) {
-					ex.printStackTrace();
-				}
-			}
+			if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+				loadInBackground(fileChooser.getSelectedFile(), false);
+		}
+		// Pattern library, starting in the directory of the file chooser
+		else if (source == libraryMenuItem) {
+			if (libraryDialog == null)
+				libraryDialog = new PatternLibraryDialog(this, fileChooser
+						.getCurrentDirectory());
+			File file = libraryDialog.showDialog();
+			if (file != null)
+				loadInBackground(file, false);
+		}
+		// Save checkpoint
+		else if (source == saveCheckpointMenuItem) {
+			if (checkpointChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+				saveInBackground(checkpointChooser.getSelectedFile(), true);
+		}
+		// Open checkpoint
+		else if (source == openCheckpointMenuItem) {
+			if (checkpointChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+				loadInBackground(checkpointChooser.getSelectedFile(), true);
 		}
 		// Exit program
 		else if (source == exitMenuItem) {
@@ -433,6 +747,14 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 			updateGrid();
 			canvas.setCellSize(((Integer) cellSizeSpinner.getValue()).intValue());
 		}
+		// Board size
+		else if (source == boardSizeButton) {
+			simulation.setBoardSize(
+					((Integer) boardWidthSpinner.getValue()).intValue(),
+					((Integer) boardHeightSpinner.getValue()).intValue());
+			canvas.moveView(0, 0);
+			updateHistorySlider();
+		}
 		// Generation rule
 		else if (source == ruleButton) {
 			try {
@@ -443,6 +765,125 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 		}
 	}
 	
+	/**
+	 * Reads a pattern or checkpoint in a background thread. The board is
+	 * only replaced when the whole file was read, so a cancelled or failed
+	 * load leaves it untouched.
+	 */
+	private void loadInBackground(final File file, final boolean checkpoint) {
+		final SwingWorker<Checkpoint, Void> job = new SwingWorker<Checkpoint, Void>() {
+			protected Checkpoint doInBackground() throws IOException {
+				if (checkpoint)
+					return Checkpoint.read(file);
+				return simulation.loadFile(file, new ProgressListener() {
+					public void progress(long done, long total) {
+						setProgress((int) (100 * done / Math.max(total, 1)));
+					}
+				});
+			}
+
+			protected void done() {
+				try {
+					simulation.restore(get());
+					ruleTextField.setText(simulation.getRule());
+					canvas.moveView(0, 0);
+					updateHistorySlider();
+				} catch (CancellationException ex) {
+					System.out.println("Reading " + file + " cancelled");
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					showError("Fehler beim Laden", ex.getCause());
+				} finally {
+					finishFileJob();
+				}
+			}
+		};
+		startFileJob(job, true, "Lade " + file.getName());
+	}
+
+	/**
+	 * Writes a pattern or checkpoint in a background thread. The board is
+	 * copied between two generations, so it can be saved while the
+	 * simulation is running.
+	 */
+	private void saveInBackground(final File file, final boolean checkpoint) {
+		final SwingWorker<Void, Void> job = new SwingWorker<Void, Void>() {
+			protected Void doInBackground() throws IOException {
+				Checkpoint snapshot = simulation.createCheckpoint();
+				if (checkpoint) {
+					snapshot.write(file);
+					return null;
+				}
+
+				try {
+					snapshot.writeRle(file, new ProgressListener() {
+						public void progress(long done, long total) {
+							setProgress((int) (100 * done / Math.max(total, 1)));
+						}
+					});
+				} catch (IOException ex) {
+					// Do not leave a truncated pattern behind
+					file.delete();
+					throw ex;
+				}
+				return null;
+			}
+
+			protected void done() {
+				try {
+					get();
+				} catch (CancellationException ex) {
+					System.out.println("Writing " + file + " cancelled");
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					showError("Fehler beim Speichern", ex.getCause());
+				} finally {
+					finishFileJob();
+				}
+			}
+		};
+		startFileJob(job, false, "Speichere " + file.getName());
+	}
+
+	/**
+	 * Starts a file job with a progress monitor. Cancelling the monitor
+	 * interrupts the job, which is noticed by the RLE reader and writer.
+	 */
+	private void startFileJob(final SwingWorker<?, ?> job, boolean loads,
+			String note) {
+		final ProgressMonitor monitor = new ProgressMonitor(this, note, null,
+				0, 100);
+		job.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				if ("progress".equals(e.getPropertyName()))
+					monitor.setProgress(job.getProgress());
+				if (monitor.isCanceled())
+					job.cancel(true);
+				if (job.isDone())
+					monitor.close();
+			}
+		});
+
+		fileJob = job;
+		fileJobLoads = loads;
+		enableElements();
+		job.execute();
+	}
+
+	private void finishFileJob() {
+		fileJob = null;
+		enableElements();
+		canvas.repaint();
+	}
+
+	private void showError(String title, Throwable cause) {
+		cause.printStackTrace();
+		JOptionPane.showMessageDialog(this, cause.getMessage(), title,
+				JOptionPane.ERROR_MESSAGE);
+	}
+
 	private void updateGrid() {
 		int size = ((Integer) cellSizeSpinner.getValue()).intValue();
 		if (size <= 3)
@@ -454,38 +895,102 @@ public class GameOfLife extends JFrame implements ActionListener, Runnable {
 	private void enableElements() {
 		boolean e = !generateRunning;
 		stepsSpinner.setEnabled(e);
+		generationsPerFrameSpinner.setEnabled(e);
+		frameRateSpinner.setEnabled(e);
+		maxSpeedCheckBox.setEnabled(e);
+		stopOnCycleCheckBox.setEnabled(e);
 		cellSizeSpinner.setEnabled(e);
 		cellSizeButton.setEnabled(e);
 		clearButton.setEnabled(e);
 		randomizeButton.setEnabled(e);
-		openMenuItem.setEnabled(e);
-		saveMenuItem.setEnabled(e);
+		boardWidthSpinner.setEnabled(e);
+		boardHeightSpinner.setEnabled(e);
+		boardSizeButton.setEnabled(e);
+		// Saving works on a copy of the board, so it may run alongside
+		boolean idle = fileJob == null;
+		openMenuItem.setEnabled(e && idle);
+		libraryMenuItem.setEnabled(e && idle);
+		saveMenuItem.setEnabled(idle);
+		openCheckpointMenuItem.setEnabled(e && idle);
+		saveCheckpointMenuItem.setEnabled(idle);
+		generateButton.setEnabled(idle || !fileJobLoads);
 		ruleTextField.setEnabled(e);
 		ruleButton.setEnabled(e);
+		historyCheckBox.setEnabled(e);
+		backButton.setEnabled(e);
+		forwardButton.setEnabled(e);
+		historySlider.setEnabled(e);
 	}
 
+	/**
+	 * Runs the simulation without waiting for the event dispatch thread.
+	 * Every <code>generationsPerFrame</code> generations a frame is published
+	 * to the canvas and the thread waits for the next tick of the frame
+	 * timer. At maximum speed the simulation never waits and only publishes
+	 * a frame when the timer asks for one.
+	 */
 	public void run() {
 		try {
 			int maxSteps = ((Integer) stepsSpinner.getValue()).intValue();
+			int generationsPerFrame = ((Integer) generationsPerFrameSpinner
+					.getValue()).intValue();
+			boolean maxSpeed = maxSpeedCheckBox.isSelected();
+
+			CycleDetector detector = null;
+			if (stopOnCycleCheckBox.isSelected())
+				detector = new CycleDetector(simulation, MAX_CYCLE_PERIOD, true);
+
+			frameTick.drainPermits();
+			int generations = 0;
+			boolean recordHistory = historyCheckBox.isSelected();
 			while (--maxSteps >= 0 && generateRunning) {
-				simulation.generate();
-				
-				final int steps = maxSteps; 
-				SwingUtilities.invokeAndWait(new Runnable() {
-					public void run() {
-						generateButton.setText("Anhalten " + steps);
-						canvas.repaint();
-					}
-				});
+				if (recordHistory)
+					history.generate();
+				else
+					simulation.generate();
+				stepsLeft = maxSteps;
+
+				if (detector != null && detector.update())
+					break;
+
+				if (maxSpeed) {
+					if (frameRequested.getAndSet(false))
+						canvas.renderFrame();
+				} else if (++generations >= generationsPerFrame) {
+					canvas.renderFrame();
+					generations = 0;
+
+					// Wait for the frame timer on the event thread
+					long start = System.nanoTime();
+					frameTick.acquire();
+					Metrics.getInstance().waitedForEdt(System.nanoTime() - start);
+				}
 			}
+			canvas.renderFrame();
 
+			long start = System.nanoTime();
 			SwingUtilities.invokeAndWait(new Runnable() {
 				public void run() {
+					frameTimer.stop();
+					canvas.setLive(false);
+					canvas.repaint();
 					generateRunning = false;
 					generateButton.setText("Simulieren");
 					enableElements();
+					updateHistorySlider();
 				}
 			});
+			Metrics.getInstance().waitedForEdt(System.nanoTime() - start);
+
+			if (detector != null && detector.getPeriod() > 0) {
+				final String message = "Zyklus mit Periode " + detector.getPeriod()
+						+ " ab Generation " + detector.getStart();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						JOptionPane.showMessageDialog(GameOfLife.this, message);
+					}
+				});
+			}
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
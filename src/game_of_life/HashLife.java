@@ -0,0 +1,778 @@
+package game_of_life;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HashLife engine for very long runs of structured patterns. The universe is
+ * an unbounded plane stored as a canonicalized quadtree: equal subtrees are
+ * shared, and the future of every subtree is memoized in the node itself, so
+ * repetitive patterns can be advanced by 2^k generations in a single call.
+ *
+ * The memo cache is bounded by {@link #setMaxNodes(int)}. If the node table
+ * grows beyond the limit, all nodes not reachable from the current pattern
+ * are evicted together with all memoized results.
+ *
+ * Besides RLE, patterns are read and written in the Macrocell format of
+ * Golly, which stores the quadtree itself. Example: <code>
+ *  [M2] (game_of_life)
+ *  #R 23/3
+ *  #G 0
+ *  .*$..*$***$
+ *  4 1 0 0 0
+ * </code>
+ * <ul>
+ * <li>Nodes are numbered from 1 in the order of their lines, 0 is the empty
+ * node of the needed level. The last node is the root, centered at the
+ * origin.</li>
+ * <li>A line of <code>.</code>, <code>*</code> and <code>$</code> is a node
+ * of 8x8 cells, row by row, <code>$</code> ends a row. Dead cells at the
+ * end of a row and empty rows at the end are left out.</li>
+ * <li>Other nodes are given by their level (log2 of the size) and the
+ * numbers of their nw, ne, sw and se children.</li>
+ * </ul>
+ */
+public class HashLife {
+
+	static final class Node {
+
+		final Node nw, ne, sw, se;
+
+		final int level;
+
+		final long population;
+
+		final int hash;
+
+		/*
+		 * Hash table chain
+		 */
+		Node next;
+
+		/*
+		 * Memoized center after 2^min(level - 2, stepLog) generations
+		 */
+		Node result;
+
+		boolean marked;
+
+		Node(boolean alive) {
+			nw = ne = sw = se = null;
+			level = 0;
+			population = alive ? 1 : 0;
+			hash = alive ? 0x5bd1e995 : 0x1b873593;
+		}
+
+		Node(Node nw, Node ne, Node sw, Node se, int hash) {
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			this.hash = hash;
+			level = nw.level + 1;
+			population = nw.population + ne.population + sw.population
+					+ se.population;
+		}
+	}
+
+	private static final Node DEAD = new Node(false);
+
+	private static final Node ALIVE = new Node(true);
+
+	private static final String CONWAY_RULE = "23/3";
+
+	private static final int DEFAULT_MAX_NODES = 1 << 21;
+
+	private static final int INITIAL_TABLE_SIZE = 1 << 16;
+
+	private static final int BLOCK_LEVEL = 6;
+
+	private static final int BLOCK_SIZE = 1 << BLOCK_LEVEL;
+
+	/**
+	 * Level of the 8x8 leaf nodes of Macrocell files
+	 */
+	private static final int LEAF_LEVEL = 3;
+
+	private static final int LEAF_SIZE = 1 << LEAF_LEVEL;
+
+	/**
+	 * Coordinates of the cells must fit into a long
+	 */
+	private static final int MAX_LEVEL = 62;
+
+	private static final String MACROCELL_HEADER = "[M2]";
+
+	private Node[] table;
+
+	private int numNodes;
+
+	private int maxNodes = DEFAULT_MAX_NODES;
+
+	private Node[] emptyNodes;
+
+	private Node root;
+
+	private int stepLog;
+
+	private long numGenerations;
+
+	private Rule rule;
+
+	private byte[] blockTable;
+
+	public HashLife() {
+		table = new Node[INITIAL_TABLE_SIZE];
+		emptyNodes = new Node[64];
+		emptyNodes[0] = DEAD;
+		setRule(CONWAY_RULE);
+		clear();
+	}
+
+	/**
+	 * Rules which give birth to cells without neighbors are not supported,
+	 * since the empty plane would not stay empty.
+	 */
+	public void setRule(String rule) {
+		Rule r = Rule.parse(rule);
+		if (r.isBirthWithoutNeighbors())
+			throw new IllegalArgumentException("Rule " + r
+					+ " not supported by HashLife");
+		this.rule = r;
+		blockTable = r.getBlockTable();
+		clearResults();
+		System.out.println("Rule loaded: " + getRule());
+	}
+
+	public String getRule() {
+		return rule.toString();
+	}
+
+	/**
+	 * Upper bound of the number of nodes kept in the memo cache
+	 */
+	public void setMaxNodes(int max) {
+		maxNodes = max;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	public void clear() {
+		root = empty(3);
+		numGenerations = 0;
+	}
+
+	public void readFile(File file) throws IOException {
+		readFile(file, null);
+	}
+
+	/**
+	 * Reads an RLE file, see {@link RleReader} for the format. The cells are
+	 * streamed straight into the quadtree, the pattern is placed roughly
+	 * centered around the origin. Files ending with <code>.mc</code> are
+	 * read as Macrocell files, see {@link #readMacrocell}.
+	 */
+	public void readFile(File file, ProgressListener listener)
+			throws IOException {
+		if (file.getName().toLowerCase().endsWith(".mc")) {
+			readMacrocell(file, listener);
+			return;
+		}
+
+		System.out.println("Reading file " + file);
+
+		clear();
+		setRule(CONWAY_RULE); // Default file rule
+
+		BlockBuilder builder = new BlockBuilder();
+		RleReader reader = new RleReader(file);
+		reader.setProgressListener(listener);
+		reader.read(builder);
+		builder.flush();
+	}
+
+	/**
+	 * Reads a Macrocell file. Every line becomes one node of the quadtree,
+	 * so the pattern is never expanded to cells. The generation count is
+	 * taken from the file.
+	 */
+	public void readMacrocell(File file, ProgressListener listener)
+			throws IOException {
+		System.out.println("Reading file " + file);
+
+		clear();
+		setRule(CONWAY_RULE); // Default file rule
+
+		long total = file.length(), done = 0;
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "ISO-8859-1"), 1 << 16);
+		try {
+			String line = in.readLine();
+			if (line == null || !line.startsWith(MACROCELL_HEADER))
+				throw new IOException(file + " is no Macrocell file");
+			done += line.length() + 1;
+
+			// Index 0 stands for the empty node
+			List<Node> nodes = new ArrayList<Node>();
+			nodes.add(null);
+			long generation = 0;
+			while ((line = in.readLine()) != null) {
+				done += line.length() + 1;
+				if ((nodes.size() & 0xFFFF) == 0) {
+					if (Thread.interrupted())
+						throw new InterruptedIOException("Reading " + file
+								+ " cancelled");
+					if (listener != null)
+						listener.progress(done, total);
+				}
+
+				line = line.trim();
+				if (line.length() == 0)
+					continue;
+				char first = line.charAt(0);
+				if (first == '#') {
+					if (line.startsWith("#R"))
+						setRule(line.substring(2).trim());
+					else if (line.startsWith("#G"))
+						generation = parseNumber(line.substring(2).trim());
+				} else if (first == '.' || first == '*' || first == '$') {
+					nodes.add(parseLeaf(line));
+				} else {
+					nodes.add(parseNode(line, nodes));
+				}
+			}
+
+			if (nodes.size() < 2)
+				throw new IOException("No nodes in " + file);
+			root = nodes.get(nodes.size() - 1);
+			numGenerations = generation;
+			if (listener != null)
+				listener.progress(total, total);
+		} finally {
+			in.close();
+		}
+	}
+
+	private Node parseLeaf(String line) throws IOException {
+		long[] rows = new long[LEAF_SIZE];
+		int x = 0, y = 0;
+		for (int i = 0; i < line.length(); ++i) {
+			char ch = line.charAt(i);
+			if (ch == '$') {
+				x = 0;
+				++y;
+			} else if (ch == '.' || ch == '*') {
+				if (x >= LEAF_SIZE || y >= LEAF_SIZE)
+					throw new IOException("Leaf larger than 8x8: " + line);
+				if (ch == '*')
+					rows[y] |= 1L << x;
+				++x;
+			} else {
+				throw new IOException("Invalid leaf: " + line);
+			}
+		}
+		return buildNode(rows, 0, 0, LEAF_LEVEL);
+	}
+
+	private Node parseNode(String line, List<Node> nodes) throws IOException {
+		String[] fields = line.split("\\s+");
+		if (fields.length != 5)
+			throw new IOException("Invalid node: " + line);
+
+		int level = (int) parseNumber(fields[0]);
+		if (level <= LEAF_LEVEL || level > MAX_LEVEL)
+			throw new IOException("Unsupported node level " + level
+					+ ", only two states are supported");
+
+		Node[] children = new Node[4];
+		for (int i = 0; i < 4; ++i) {
+			long index = parseNumber(fields[i + 1]);
+			if (index < 0 || index >= nodes.size())
+				throw new IOException("Invalid node reference: " + line);
+			Node child = index == 0 ? empty(level - 1) : nodes.get((int) index);
+			if (child.level != level - 1)
+				throw new IOException("Child of wrong level: " + line);
+			children[i] = child;
+		}
+		return join(children[0], children[1], children[2], children[3]);
+	}
+
+	private static long parseNumber(String text) throws IOException {
+		try {
+			return Long.parseLong(text);
+		} catch (NumberFormatException ex) {
+			throw new IOException("Invalid number " + text);
+		}
+	}
+
+	/**
+	 * Writes the quadtree as Macrocell file. Every distinct node is written
+	 * once, so the size of the file grows with the number of distinct
+	 * subpatterns and not with the area of the pattern.
+	 */
+	public void writeMacrocell(File file) throws IOException {
+		Node node = root;
+		while (node.level < LEAF_LEVEL)
+			node = expand(node);
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "ISO-8859-1"), 1 << 16);
+		try {
+			out.write(MACROCELL_HEADER + " (game_of_life)\n");
+			out.write("#R " + getRule() + "\n");
+			if (numGenerations > 0)
+				out.write("#G " + numGenerations + "\n");
+
+			Map<Node, Integer> indices = new IdentityHashMap<Node, Integer>();
+			if (writeNode(node, indices, out, true) == 0)
+				out.write("$\n"); // Empty root
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the children before the node
+	 *
+	 * @return number of the node, 0 for empty nodes
+	 */
+	private static int writeNode(Node node, Map<Node, Integer> indices,
+			Writer out, boolean isRoot) throws IOException {
+		if (node.population == 0 && !isRoot)
+			return 0;
+		Integer index = indices.get(node);
+		if (index != null)
+			return index;
+
+		if (node.level == LEAF_LEVEL) {
+			if (node.population == 0)
+				return 0;
+			int[] rows = new int[LEAF_SIZE];
+			getBits(node, 0, 0, rows);
+			int height = LEAF_SIZE;
+			while (rows[height - 1] == 0)
+				--height;
+			StringBuilder line = new StringBuilder();
+			for (int y = 0; y < height; ++y) {
+				for (int bits = rows[y]; bits != 0; bits >>>= 1)
+					line.append((bits & 1) != 0 ? '*' : '.');
+				line.append('$');
+			}
+			out.write(line.append('\n').toString());
+		} else {
+			int nw = writeNode(node.nw, indices, out, false);
+			int ne = writeNode(node.ne, indices, out, false);
+			int sw = writeNode(node.sw, indices, out, false);
+			int se = writeNode(node.se, indices, out, false);
+			if (node.population == 0)
+				return 0;
+			out.write(node.level + " " + nw + " " + ne + " " + sw + " " + se
+					+ "\n");
+		}
+
+		index = indices.size() + 1;
+		indices.put(node, index);
+		return index;
+	}
+
+	/**
+	 * Sets bit x of <code>rows[y]</code> for the living cells of a node,
+	 * with its top left corner at x, y
+	 */
+	private static void getBits(Node node, int x, int y, int[] rows) {
+		if (node.population == 0)
+			return;
+		if (node.level == 0) {
+			rows[y] |= 1 << x;
+			return;
+		}
+		int half = 1 << (node.level - 1);
+		getBits(node.nw, x, y, rows);
+		getBits(node.ne, x + half, y, rows);
+		getBits(node.sw, x, y + half, rows);
+		getBits(node.se, x + half, y + half, rows);
+	}
+
+	public void setCell(long x, long y, boolean alive) {
+		while (!contains(root, x, y))
+			root = expand(root);
+		root = setNode(root, x, y, alive ? ALIVE : DEAD);
+	}
+
+	public boolean getCell(long x, long y) {
+		if (!contains(root, x, y))
+			return false;
+
+		Node node = root;
+		while (node.level > 0) {
+			long quarter = node.level == 1 ? 0 : 1L << (node.level - 2);
+			if (x < 0)
+				node = y < 0 ? node.nw : node.sw;
+			else
+				node = y < 0 ? node.ne : node.se;
+			x += x < 0 ? quarter : -quarter;
+			y += y < 0 ? quarter : -quarter;
+		}
+		return node == ALIVE;
+	}
+
+	/**
+	 * Advances the pattern by 2^log generations
+	 */
+	public void step(int log) {
+		if (log < 0 || log > 62)
+			throw new IllegalArgumentException("Invalid step: 2^" + log);
+
+		if (log != stepLog) {
+			stepLog = log;
+			clearResults();
+		}
+
+		// The pattern must stay inside the center of the result
+		while (root.level < stepLog + 3
+				|| center(center(root)).population != root.population)
+			root = expand(root);
+
+		root = evolve(root);
+		numGenerations += 1L << log;
+
+		if (numNodes > maxNodes)
+			collect();
+	}
+
+	public long getNumGenerations() {
+		return numGenerations;
+	}
+
+	public long getNumLiving() {
+		return root.population;
+	}
+
+	/*
+	 * Quadtree construction
+	 */
+
+	private Node join(Node nw, Node ne, Node sw, Node se) {
+		int hash = ((nw.hash * 31 + ne.hash) * 31 + sw.hash) * 31 + se.hash;
+		hash ^= hash >>> 16;
+
+		int index = hash & (table.length - 1);
+		for (Node node = table[index]; node != null; node = node.next) {
+			if (node.hash == hash && node.nw == nw && node.ne == ne
+					&& node.sw == sw && node.se == se)
+				return node;
+		}
+
+		Node node = new Node(nw, ne, sw, se, hash);
+		node.next = table[index];
+		table[index] = node;
+		if (++numNodes > table.length * 3 / 4)
+			resize(table.length * 2);
+		return node;
+	}
+
+	private Node empty(int level) {
+		if (emptyNodes[level] == null) {
+			Node e = empty(level - 1);
+			emptyNodes[level] = join(e, e, e, e);
+		}
+		return emptyNodes[level];
+	}
+
+	private Node expand(Node node) {
+		Node e = empty(node.level - 1);
+		return join(join(e, e, e, node.nw), join(e, e, node.ne, e),
+				join(e, node.sw, e, e), join(node.se, e, e, e));
+	}
+
+	private static boolean contains(Node node, long x, long y) {
+		long half = 1L << (node.level - 1);
+		return x >= -half && x < half && y >= -half && y < half;
+	}
+
+	/**
+	 * Replaces the subnode with top left corner x, y by the given node.
+	 * Coordinates are relative to the center of the node.
+	 */
+	private Node setNode(Node node, long x, long y, Node value) {
+		if (node.level == value.level)
+			return value;
+
+		long quarter = node.level == 1 ? 0 : 1L << (node.level - 2);
+		long dx = x < 0 ? quarter : -quarter;
+		long dy = y < 0 ? quarter : -quarter;
+
+		if (x < 0) {
+			if (y < 0)
+				return join(setNode(node.nw, x + dx, y + dy, value), node.ne,
+						node.sw, node.se);
+			return join(node.nw, node.ne,
+					setNode(node.sw, x + dx, y + dy, value), node.se);
+		}
+		if (y < 0)
+			return join(node.nw, setNode(node.ne, x + dx, y + dy, value),
+					node.sw, node.se);
+		return join(node.nw, node.ne, node.sw,
+				setNode(node.se, x + dx, y + dy, value));
+	}
+
+	/**
+	 * Builds the node of the square at x, y of the given level from a block
+	 * of 64x64 cells. Bit x of row y holds cell x, y.
+	 */
+	private Node buildNode(long[] block, int x, int y, int level) {
+		int size = 1 << level;
+		long mask = size == 64 ? -1L : ((1L << size) - 1) << x;
+		long bits = 0;
+		for (int row = y; row < y + size; ++row)
+			bits |= block[row] & mask;
+		if (bits == 0)
+			return empty(level);
+		if (level == 0)
+			return ALIVE;
+
+		int half = size / 2;
+		return join(buildNode(block, x, y, level - 1),
+				buildNode(block, x + half, y, level - 1),
+				buildNode(block, x, y + half, level - 1),
+				buildNode(block, x + half, y + half, level - 1));
+	}
+
+	/**
+	 * Collects the cells of 64 pattern rows in blocks of 64x64 cells. When
+	 * the reader moves on to the next rows, the blocks are inserted into the
+	 * quadtree as a whole.
+	 */
+	private class BlockBuilder implements PatternBuilder {
+
+		private final Map<Long, long[]> blocks = new HashMap<Long, long[]>();
+
+		private long xStart, yStart;
+
+		private long bandY;
+
+		public void setRule(String rule) {
+			HashLife.this.setRule(rule);
+		}
+
+		public void setSize(long width, long height) {
+			System.out.println("Size " + width + "/" + height);
+
+			// Blocks have to be aligned with the quadtree
+			xStart = -((width / 2 + BLOCK_SIZE - 1) & -BLOCK_SIZE);
+			yStart = -((height / 2 + BLOCK_SIZE - 1) & -BLOCK_SIZE);
+		}
+
+		public void setCells(long x, long y, long length) {
+			if (y >= bandY + BLOCK_SIZE) {
+				flush();
+				bandY = y & -BLOCK_SIZE;
+			}
+
+			int row = (int) (y - bandY);
+			long end = x + length;
+			while (x < end) {
+				long blockX = x / BLOCK_SIZE;
+				long[] block = blocks.get(blockX);
+				if (block == null) {
+					block = new long[BLOCK_SIZE];
+					blocks.put(blockX, block);
+				}
+
+				int from = (int) (x - blockX * BLOCK_SIZE);
+				int to = (int) Math.min(end - blockX * BLOCK_SIZE, BLOCK_SIZE);
+				block[row] |= (-1L >>> (BLOCK_SIZE - (to - from))) << from;
+				x += to - from;
+			}
+		}
+
+		void flush() {
+			for (Map.Entry<Long, long[]> entry : blocks.entrySet()) {
+				long x = xStart + entry.getKey() * BLOCK_SIZE;
+				long y = yStart + bandY;
+				while (root.level <= BLOCK_LEVEL || !contains(root, x, y)
+						|| !contains(root, x + BLOCK_SIZE - 1, y + BLOCK_SIZE - 1))
+					root = expand(root);
+
+				Node block = buildNode(entry.getValue(), 0, 0, BLOCK_LEVEL);
+				root = setNode(root, x, y, block);
+			}
+			blocks.clear();
+		}
+	}
+
+	/*
+	 * Evolution
+	 */
+
+	private Node center(Node node) {
+		return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+	}
+
+	private Node centerHorizontal(Node w, Node e) {
+		return join(w.ne, e.nw, w.se, e.sw);
+	}
+
+	private Node centerVertical(Node n, Node s) {
+		return join(n.sw, n.se, s.nw, s.ne);
+	}
+
+	/**
+	 * Returns the center of the node after 2^min(level - 2, stepLog)
+	 * generations.
+	 */
+	private Node evolve(Node node) {
+		if (node.result != null)
+			return node.result;
+
+		Node result;
+		if (node.population == 0) {
+			result = empty(node.level - 1);
+		} else if (node.level == 2) {
+			result = evolveLeaf(node);
+		} else {
+			// Nine overlapping subnodes of half the size
+			Node n00 = node.nw, n01 = centerHorizontal(node.nw, node.ne), n02 = node.ne;
+			Node n10 = centerVertical(node.nw, node.sw), n11 = center(node);
+			Node n12 = centerVertical(node.ne, node.se);
+			Node n20 = node.sw, n21 = centerHorizontal(node.sw, node.se), n22 = node.se;
+
+			Node r00 = evolve(n00), r01 = evolve(n01), r02 = evolve(n02);
+			Node r10 = evolve(n10), r11 = evolve(n11), r12 = evolve(n12);
+			Node r20 = evolve(n20), r21 = evolve(n21), r22 = evolve(n22);
+
+			Node nw = join(r00, r01, r10, r11);
+			Node ne = join(r01, r02, r11, r12);
+			Node sw = join(r10, r11, r20, r21);
+			Node se = join(r11, r12, r21, r22);
+
+			if (stepLog >= node.level - 2) {
+				// Full speed, advance a second time
+				result = join(evolve(nw), evolve(ne), evolve(sw), evolve(se));
+			} else {
+				result = join(center(nw), center(ne), center(sw), center(se));
+			}
+		}
+
+		node.result = result;
+		return result;
+	}
+
+	/**
+	 * One generation of the 2x2 center of a 4x4 node
+	 */
+	private Node evolveLeaf(Node node) {
+		// Bit y * 4 + x holds cell (x, y)
+		int cells = 0;
+		Node[] quads = { node.nw, node.ne, node.sw, node.se };
+		for (int q = 0; q < 4; ++q) {
+			int x0 = (q & 1) * 2, y0 = (q >> 1) * 2;
+			Node quad = quads[q];
+			if (quad.nw == ALIVE)
+				cells |= 1 << (y0 * 4 + x0);
+			if (quad.ne == ALIVE)
+				cells |= 1 << (y0 * 4 + x0 + 1);
+			if (quad.sw == ALIVE)
+				cells |= 1 << ((y0 + 1) * 4 + x0);
+			if (quad.se == ALIVE)
+				cells |= 1 << ((y0 + 1) * 4 + x0 + 1);
+		}
+
+		int next = blockTable[cells];
+		return join((next & 1) != 0 ? ALIVE : DEAD,
+				(next & 2) != 0 ? ALIVE : DEAD,
+				(next & 4) != 0 ? ALIVE : DEAD,
+				(next & 8) != 0 ? ALIVE : DEAD);
+	}
+
+	/*
+	 * Memo cache
+	 */
+
+	private void resize(int size) {
+		Node[] newTable = new Node[size];
+		for (Node chain : table) {
+			while (chain != null) {
+				Node next = chain.next;
+				int index = chain.hash & (size - 1);
+				chain.next = newTable[index];
+				newTable[index] = chain;
+				chain = next;
+			}
+		}
+		table = newTable;
+	}
+
+	private void clearResults() {
+		if (table == null)
+			return;
+		for (Node chain : table)
+			for (; chain != null; chain = chain.next)
+				chain.result = null;
+	}
+
+	/**
+	 * Evicts all nodes which are not part of the current pattern and all
+	 * memoized results.
+	 */
+	private void collect() {
+		mark(root);
+		for (Node e : emptyNodes)
+			if (e != null)
+				mark(e);
+
+		int size = table.length;
+		while (size > INITIAL_TABLE_SIZE && size / 4 > numNodes)
+			size /= 2;
+
+		Node[] oldTable = table;
+		table = new Node[size];
+		numNodes = 0;
+		for (Node chain : oldTable) {
+			while (chain != null) {
+				Node next = chain.next;
+				if (chain.marked) {
+					chain.marked = false;
+					chain.result = null;
+					int index = chain.hash & (size - 1);
+					chain.next = table[index];
+					table[index] = chain;
+					++numNodes;
+				}
+				chain = next;
+			}
+		}
+
+		// Grow again if most nodes survived
+		while (numNodes > table.length * 3 / 4)
+			resize(table.length * 2);
+
+		System.out.println("HashLife cache collected: " + numNodes + " nodes");
+	}
+
+	private static void mark(Node node) {
+		if (node.level == 0 || node.marked)
+			return;
+		node.marked = true;
+		mark(node.nw);
+		mark(node.ne);
+		mark(node.sw);
+		mark(node.se);
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,236 @@
+package game_of_life;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded history of a simulation, which allows to step back and to jump to
+ * earlier generations. The history is split into segments, each starting
+ * with a keyframe of the whole board followed by the cells which changed in
+ * each generation. Since a delta holds the XOR of the old and the new
+ * values, the same delta moves one generation forward or back.
+ *
+ * If the memory budget is exceeded, the oldest segments are dropped. If the
+ * board is edited from outside, e.g. by drawing or by changing the rule, the
+ * history restarts with the edited board. Edits are noticed by the
+ * modification counter of the simulation, so checking for them does not
+ * slow down the steps.
+ */
+public class History {
+
+	public static final long DEFAULT_BUDGET = 64L << 20;
+
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+	/**
+	 * Keyframe followed by deltas, delta i leads from generation
+	 * <code>keyframe + i</code> to <code>keyframe + i + 1</code>
+	 */
+	private static class Segment {
+
+		final Checkpoint keyframe;
+
+		/*
+		 * Values of the living cells of the keyframe, see
+		 * Simulation.getLivingValues()
+		 */
+		final byte[] values;
+
+		final List<int[]> deltas = new ArrayList<int[]>();
+
+		long memory;
+
+		Segment(Checkpoint keyframe, byte[] values) {
+			this.keyframe = keyframe;
+			this.values = values;
+			memory = 64 + 8L * keyframe.getHeight()
+					* BitSimulation.numWords(keyframe.getWidth())
+					+ values.length;
+		}
+
+		long getStart() {
+			return keyframe.getGeneration();
+		}
+
+		long getEnd() {
+			return keyframe.getGeneration() + deltas.size();
+		}
+	}
+
+	private final Simulation simulation;
+
+	private final long budget;
+
+	private final int keyframeInterval;
+
+	private final List<Segment> segments = new ArrayList<Segment>();
+
+	private long memory;
+
+	/*
+	 * State of the board at the current position, to notice edits
+	 */
+
+	private long position;
+
+	private long modification;
+
+	public History(Simulation simulation) {
+		this(simulation, DEFAULT_BUDGET, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	public History(Simulation simulation, long budget, int keyframeInterval) {
+		if (keyframeInterval < 1)
+			throw new IllegalArgumentException("Invalid keyframe interval");
+		this.simulation = simulation;
+		this.budget = budget;
+		this.keyframeInterval = keyframeInterval;
+		clear();
+	}
+
+	/**
+	 * Restarts the history with the current board
+	 */
+	public synchronized void clear() {
+		segments.clear();
+		memory = 0;
+		addSegment();
+		remember();
+	}
+
+	/**
+	 * Moves one generation forward. Generations in the history are replayed,
+	 * new generations are computed and recorded.
+	 */
+	public synchronized void generate() {
+		check();
+
+		if (position < getLastGeneration()) {
+			Segment segment = findSegment(position);
+			int i = (int) (position - segment.getStart());
+			simulation.toggleCells(segment.deltas.get(i), position + 1);
+			remember();
+			return;
+		}
+
+		simulation.generate();
+		int[] delta = simulation.getChangedCells();
+		Segment segment = segments.get(segments.size() - 1);
+		segment.deltas.add(delta);
+		remember();
+
+		long size = 16 + 4L * delta.length;
+		segment.memory += size;
+		memory += size;
+
+		if (segment.deltas.size() >= keyframeInterval)
+			addSegment();
+		evict();
+	}
+
+	/**
+	 * Moves one generation back
+	 *
+	 * @return false if the first generation of the history is reached
+	 */
+	public synchronized boolean back() {
+		check();
+		if (position <= getFirstGeneration())
+			return false;
+
+		Segment segment = findSegment(position - 1);
+		int i = (int) (position - 1 - segment.getStart());
+		simulation.toggleCells(segment.deltas.get(i), position - 1);
+		remember();
+		return true;
+	}
+
+	/**
+	 * Jumps to a generation of the history. Nearby generations are reached
+	 * through the deltas, otherwise the closest keyframe is restored first.
+	 */
+	public synchronized void seek(long generation) {
+		check();
+		generation = Math.max(getFirstGeneration(), Math.min(generation,
+				getLastGeneration()));
+
+		Segment segment = findSegment(generation);
+		if (Math.abs(generation - position) > generation - segment.getStart()) {
+			simulation.restore(segment.keyframe);
+			simulation.setLivingValues(segment.values);
+			remember();
+		}
+
+		while (position < generation)
+			generate();
+		while (position > generation)
+			back();
+	}
+
+	public synchronized long getFirstGeneration() {
+		return segments.get(0).getStart();
+	}
+
+	public synchronized long getLastGeneration() {
+		return segments.get(segments.size() - 1).getEnd();
+	}
+
+	/**
+	 * Current generation within the history
+	 */
+	public synchronized long getGeneration() {
+		return position;
+	}
+
+	/**
+	 * Estimated memory of the keyframes and deltas in bytes
+	 */
+	public synchronized long getMemory() {
+		return memory;
+	}
+
+	private void addSegment() {
+		Segment segment = new Segment(simulation.createCheckpoint(),
+				simulation.getLivingValues());
+		segments.add(segment);
+		memory += segment.memory;
+	}
+
+	/**
+	 * Drops the oldest segments, the current segment is always kept
+	 */
+	private void evict() {
+		while (memory > budget && segments.size() > 1
+				&& segments.get(0).getEnd() <= position) {
+			memory -= segments.remove(0).memory;
+		}
+	}
+
+	private Segment findSegment(long generation) {
+		int low = 0, high = segments.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (segments.get(mid).getStart() <= generation)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return segments.get(low);
+	}
+
+	private void remember() {
+		position = simulation.getNumGenerations();
+		modification = simulation.getModification();
+	}
+
+	/**
+	 * Restarts the history if the board was edited, resized or got another
+	 * rule, which all count as modifications of the simulation
+	 */
+	private void check() {
+		if (simulation.getNumGenerations() != position
+				|| simulation.getModification() != modification)
+			clear();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,132 @@
+package game_of_life;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array of longs outside of the heap with a <code>long</code> index, either
+ * in direct buffers or mapped from a file. A single buffer holds at most
+ * 2^31 bytes, so the longs are split into chunks of 1 GiB.
+ */
+final class LongStore {
+
+	/**
+	 * Longs per chunk
+	 */
+	private static final int CHUNK_SHIFT = 27;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final long size;
+
+	private final LongBuffer[] chunks;
+
+	/*
+	 * Mapped buffers, to write them back to the file, or null
+	 */
+	private final MappedByteBuffer[] mapped;
+
+	/**
+	 * Allocates direct buffers, which are zeroed
+	 */
+	LongStore(long size) {
+		this.size = size;
+		chunks = new LongBuffer[numChunks(size)];
+		mapped = null;
+		for (int i = 0; i < chunks.length; ++i)
+			chunks[i] = ByteBuffer.allocateDirect(8 * chunkLength(i))
+					.order(ByteOrder.nativeOrder()).asLongBuffer();
+	}
+
+	/**
+	 * Maps <code>size</code> longs of the file, starting at byte
+	 * <code>offset</code>. The file is enlarged if needed.
+	 */
+	LongStore(FileChannel channel, long offset, long size) throws IOException {
+		this.size = size;
+		chunks = new LongBuffer[numChunks(size)];
+		mapped = new MappedByteBuffer[chunks.length];
+		for (int i = 0; i < chunks.length; ++i) {
+			mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset
+					+ 8L * i * CHUNK_SIZE, 8L * chunkLength(i));
+			chunks[i] = mapped[i].order(ByteOrder.nativeOrder())
+					.asLongBuffer();
+		}
+	}
+
+	private static int numChunks(long size) {
+		return (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+	}
+
+	private int chunkLength(int chunk) {
+		return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_SHIFT));
+	}
+
+	long size() {
+		return size;
+	}
+
+	long get(long index) {
+		return chunks[(int) (index >>> CHUNK_SHIFT)]
+				.get((int) (index & CHUNK_MASK));
+	}
+
+	void put(long index, long value) {
+		chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK),
+				value);
+	}
+
+	/**
+	 * Copies <code>length</code> longs starting at <code>index</code> to
+	 * <code>out</code>
+	 */
+	void get(long index, long[] out, int length) {
+		int offset = 0;
+		while (offset < length) {
+			int chunk = (int) (index >>> CHUNK_SHIFT);
+			int start = (int) (index & CHUNK_MASK);
+			int n = Math.min(length - offset, CHUNK_SIZE - start);
+			chunks[chunk].get(start, out, offset, n);
+			offset += n;
+			index += n;
+		}
+	}
+
+	/**
+	 * Copies <code>length</code> longs of <code>in</code> to the store,
+	 * starting at <code>index</code>
+	 */
+	void put(long index, long[] in, int length) {
+		int offset = 0;
+		while (offset < length) {
+			int chunk = (int) (index >>> CHUNK_SHIFT);
+			int start = (int) (index & CHUNK_MASK);
+			int n = Math.min(length - offset, CHUNK_SIZE - start);
+			chunks[chunk].put(start, in, offset, n);
+			offset += n;
+			index += n;
+		}
+	}
+
+	void clear() {
+		long[] zeros = new long[Math.min(CHUNK_SIZE, 1 << 16)];
+		for (long index = 0; index < size; index += zeros.length)
+			put(index, zeros, (int) Math.min(zeros.length, size - index));
+	}
+
+	/**
+	 * Writes mapped chunks back to the file
+	 */
+	void force() {
+		if (mapped != null)
+			for (MappedByteBuffer buffer : mapped)
+				buffer.force();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
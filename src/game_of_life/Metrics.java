@@ -0,0 +1,249 @@
+package game_of_life;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ * Collects timings of the simulation, the canvas and the file I/O. Recording
+ * only adds to striped counters and log2 latency buckets, all aggregation is
+ * done when the attributes are read, so the metrics can stay enabled.
+ */
+public class Metrics implements MetricsMXBean {
+
+	public static final String NAME = "game_of_life:type=Metrics";
+
+	private static final Metrics instance = new Metrics();
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance,
+					new ObjectName(NAME));
+		} catch (Exception ex) {
+			System.out.println("Metrics not registered: " + ex);
+		}
+	}
+
+	/**
+	 * Latencies in buckets of powers of two
+	 */
+	private static class Latency {
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder total = new LongAdder();
+
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+		void record(long nanos) {
+			count.increment();
+			total.add(nanos);
+			buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+		}
+
+		long getCount() {
+			return count.sum();
+		}
+
+		long getTotal() {
+			return total.sum();
+		}
+
+		long getMean() {
+			long n = count.sum();
+			return n > 0 ? total.sum() / n : 0;
+		}
+
+		long[] getHistogram() {
+			long[] histogram = new long[buckets.length()];
+			for (int i = 0; i < histogram.length; ++i)
+				histogram[i] = buckets.get(i);
+			return histogram;
+		}
+
+		/**
+		 * Upper bound of the bucket containing the given fraction of all
+		 * values
+		 */
+		long getPercentile(double fraction) {
+			long[] histogram = getHistogram();
+			long n = 0;
+			for (long c : histogram)
+				n += c;
+			long rank = (long) Math.ceil(n * fraction);
+			for (int i = 0; i < histogram.length; ++i) {
+				rank -= histogram[i];
+				if (rank <= 0 && n > 0)
+					return i < 62 ? 2L << i : Long.MAX_VALUE;
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Rate of a counter since the last read
+	 */
+	private static class Rate {
+
+		private long lastCount;
+
+		private long lastTime = System.nanoTime();
+
+		synchronized double get(long count) {
+			long time = System.nanoTime();
+			double rate = time > lastTime ? (count - lastCount) * 1e9
+					/ (time - lastTime) : 0;
+			lastCount = count;
+			lastTime = time;
+			return rate;
+		}
+	}
+
+	private final Latency generate = new Latency();
+
+	private final LongAdder cellsUpdated = new LongAdder();
+
+	private final Rate generateRate = new Rate();
+
+	private final Rate cellRate = new Rate();
+
+	private final Latency paint = new Latency();
+
+	private final Latency edtWait = new Latency();
+
+	private final LongAdder bytesRead = new LongAdder();
+
+	private final LongAdder readTime = new LongAdder();
+
+	private final LongAdder bytesWritten = new LongAdder();
+
+	private final LongAdder writeTime = new LongAdder();
+
+	private volatile long population;
+
+	private volatile long boardMemory;
+
+	private Metrics() {
+	}
+
+	public static Metrics getInstance() {
+		return instance;
+	}
+
+	/*
+	 * Recording
+	 */
+
+	void generated(long nanos, long cells, long population) {
+		generate.record(nanos);
+		cellsUpdated.add(cells);
+		this.population = population;
+	}
+
+	void painted(long nanos) {
+		paint.record(nanos);
+	}
+
+	void waitedForEdt(long nanos) {
+		edtWait.record(nanos);
+	}
+
+	void read(long bytes, long nanos) {
+		bytesRead.add(bytes);
+		readTime.add(nanos);
+	}
+
+	void written(long bytes, long nanos) {
+		bytesWritten.add(bytes);
+		writeTime.add(nanos);
+	}
+
+	void setPopulation(long population) {
+		this.population = population;
+	}
+
+	void setBoardMemory(long bytes) {
+		boardMemory = bytes;
+	}
+
+	/*
+	 * Attributes
+	 */
+
+	public long getGenerations() {
+		return generate.getCount();
+	}
+
+	public double getGenerationsPerSecond() {
+		return generateRate.get(generate.getCount());
+	}
+
+	public long getCellsUpdated() {
+		return cellsUpdated.sum();
+	}
+
+	public double getCellsUpdatedPerSecond() {
+		return cellRate.get(cellsUpdated.sum());
+	}
+
+	public long[] getGenerateLatencyHistogram() {
+		return generate.getHistogram();
+	}
+
+	public long getGenerateLatencyMean() {
+		return generate.getMean();
+	}
+
+	public long getGenerateLatency99() {
+		return generate.getPercentile(0.99);
+	}
+
+	public long getPaints() {
+		return paint.getCount();
+	}
+
+	public long getPaintTimeMean() {
+		return paint.getMean();
+	}
+
+	public long getPaintTime99() {
+		return paint.getPercentile(0.99);
+	}
+
+	public long getEdtWaits() {
+		return edtWait.getCount();
+	}
+
+	public long getEdtWaitTime() {
+		return edtWait.getTotal();
+	}
+
+	public long getRleBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public double getRleReadBytesPerSecond() {
+		long time = readTime.sum();
+		return time > 0 ? bytesRead.sum() * 1e9 / time : 0;
+	}
+
+	public long getRleBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	public double getRleWriteBytesPerSecond() {
+		long time = writeTime.sum();
+		return time > 0 ? bytesWritten.sum() * 1e9 / time : 0;
+	}
+
+	public long getPopulation() {
+		return population;
+	}
+
+	public long getBoardMemory() {
+		return boardMemory;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
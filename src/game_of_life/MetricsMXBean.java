@@ -0,0 +1,50 @@
+package game_of_life;
+
+/**
+ * Runtime metrics exported over JMX as <code>game_of_life:type=Metrics</code>.
+ * Times are given in nanoseconds. Rates are averaged over the time since
+ * the previous read of the same attribute.
+ */
+public interface MetricsMXBean {
+
+	long getGenerations();
+
+	double getGenerationsPerSecond();
+
+	long getCellsUpdated();
+
+	double getCellsUpdatedPerSecond();
+
+	/**
+	 * Number of generations whose computation took between 2^i and
+	 * 2^(i + 1) nanoseconds
+	 */
+	long[] getGenerateLatencyHistogram();
+
+	long getGenerateLatencyMean();
+
+	long getGenerateLatency99();
+
+	long getPaints();
+
+	long getPaintTimeMean();
+
+	long getPaintTime99();
+
+	long getEdtWaits();
+
+	long getEdtWaitTime();
+
+	long getRleBytesRead();
+
+	double getRleReadBytesPerSecond();
+
+	long getRleBytesWritten();
+
+	double getRleWriteBytesPerSecond();
+
+	long getPopulation();
+
+	long getBoardMemory();
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,471 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Variant of {@link BitSimulation} for boards beyond the limits of Java
+ * arrays. Both boards are stored outside of the heap, row after row with
+ * the packed rows of {@link BitSimulation}, so the garbage collector never
+ * sees them. Only three rows per thread are copied to the heap while a
+ * generation is computed.
+ *
+ * The boards are kept in direct buffers, which are limited by
+ * <code>-XX:MaxDirectMemorySize</code>, or mapped from a file, which allows
+ * boards larger than the physical memory.
+ */
+public class OffHeapSimulation {
+
+	private LongStore board;
+
+	private LongStore tempBoard;
+
+	private File mapFile;
+
+	private RandomAccessFile mappedFile;
+
+	private int boardWidth;
+
+	private int boardHeight;
+
+	private int words;
+
+	private long numGenerations;
+
+	private long numLiving;
+
+	private Rule rule;
+
+	private ForkJoinPool pool;
+
+	private static final String CONWAY_RULE = "23/3";
+
+	private static final int MAX_PATTERN_SIZE = 1 << 20;
+
+	/**
+	 * Rows per band of a thread
+	 */
+	private static final int BAND_HEIGHT = 256;
+
+	/*
+	 * Every simulation has its own generator, so concurrent simulations
+	 * neither contend for it nor disturb each other's sequence
+	 */
+	private Random rand = new Random();
+
+	/**
+	 * Keeps the boards in direct buffers
+	 */
+	public OffHeapSimulation() {
+		this(null);
+	}
+
+	/**
+	 * Maps the boards from the given file, which holds both boards one
+	 * after the other. The file is created or overwritten.
+	 */
+	public OffHeapSimulation(File mapFile) {
+		this.mapFile = mapFile;
+		setRule(CONWAY_RULE);
+	}
+
+	public void setBoardSize(int width, int height) throws IOException {
+		if (board != null && width == boardWidth && height == boardHeight)
+			return;
+
+		System.out.println("Creating off-heap board: width=" + width
+				+ ", height=" + height
+				+ (mapFile != null ? ", file=" + mapFile : ""));
+
+		int newWords = BitSimulation.numWords(width);
+		long size = (long) height * newWords;
+		LongStore newBoard, newTempBoard;
+		RandomAccessFile newFile = null;
+		if (mapFile != null) {
+			// The old mapping is still read while the board is copied
+			File file = board != null ? new File(mapFile.getPath() + ".new")
+					: mapFile;
+			newFile = new RandomAccessFile(file, "rw");
+			newFile.setLength(0);
+			FileChannel channel = newFile.getChannel();
+			newBoard = new LongStore(channel, 0, size);
+			newTempBoard = new LongStore(channel, 8 * size, size);
+		} else {
+			newBoard = new LongStore(size);
+			newTempBoard = new LongStore(size);
+		}
+
+		if (board != null) {
+			long[] row = new long[words];
+			long[] newRow = new long[newWords];
+			int w = Math.min(words, newWords);
+			for (int y = 0; y < Math.min(height, boardHeight); ++y) {
+				board.get((long) y * words, row, words);
+				System.arraycopy(row, 0, newRow, 0, w);
+				newRow[newWords - 1] &= BitSimulation.lastWordMask(width);
+				newBoard.put((long) y * newWords, newRow, newWords);
+			}
+		}
+
+		if (mappedFile != null) {
+			mappedFile.close();
+			if (!new File(mapFile.getPath() + ".new").renameTo(mapFile))
+				throw new IOException("Could not replace " + mapFile);
+		}
+
+		board = newBoard;
+		tempBoard = newTempBoard;
+		mappedFile = newFile;
+		boardWidth = width;
+		boardHeight = height;
+		words = newWords;
+		countLiving();
+		Metrics.getInstance().setBoardMemory(16 * size);
+	}
+
+	public void setRule(String rule) {
+		this.rule = Rule.parse(rule);
+		System.out.println("Rule loaded: " + getRule());
+	}
+
+	public String getRule() {
+		return rule.toString();
+	}
+
+	/**
+	 * Use several threads for {@link #generate()}, each computing bands of
+	 * rows
+	 */
+	public void setParallelism(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+
+		if (pool != null)
+			pool.shutdown();
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * Makes {@link #randomizeBoard()} reproducible
+	 */
+	public void setSeed(long seed) {
+		rand = new Random(seed);
+	}
+
+	/**
+	 * Fills the board with density 1/2, the seed is drawn from the generator
+	 * of {@link #setSeed}
+	 */
+	public void randomizeBoard() {
+		randomizeBoard(rand.nextLong(), 0.5);
+	}
+
+	/**
+	 * Fills the board at random like {@link Simulation#randomizeBoard(long,
+	 * double)}, the same seed and density give the same board. The bands
+	 * are filled by the threads of {@link #setParallelism}.
+	 */
+	public void randomizeBoard(long seed, double density) {
+		numGenerations = 0;
+		final RandomFill fill = new RandomFill(seed, density, boardHeight);
+		if (pool == null) {
+			numLiving = 0;
+			for (int band = 0; band < fill.getNumBands(); ++band)
+				numLiving += fillBand(fill, band);
+			return;
+		}
+
+		List<Callable<Long>> bands = new ArrayList<Callable<Long>>();
+		for (int band = 0; band < fill.getNumBands(); ++band) {
+			final int b = band;
+			bands.add(new Callable<Long>() {
+				public Long call() {
+					return fillBand(fill, b);
+				}
+			});
+		}
+
+		numLiving = 0;
+		for (Future<Long> band : pool.invokeAll(bands)) {
+			try {
+				numLiving += band.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(ex);
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException(ex.getCause());
+			}
+		}
+	}
+
+	private long fillBand(RandomFill fill, int band) {
+		long[] row = new long[words];
+		int yEnd = Math.min((band + 1) * RandomFill.BAND_HEIGHT, boardHeight);
+		long living = 0;
+		for (int y = band * RandomFill.BAND_HEIGHT; y < yEnd; ++y) {
+			living += fill.nextRow(band, row, boardWidth);
+			board.put((long) y * words, row, words);
+		}
+		return living;
+	}
+
+	public void clearBoard() {
+		board.clear();
+		numGenerations = 0;
+		numLiving = 0;
+	}
+
+	public void readFile(File file) throws IOException {
+		readFile(file, null);
+	}
+
+	/**
+	 * Reads an RLE file, see {@link RleReader} for the format. The board is
+	 * enlarged if the pattern does not fit, and the pattern is centered.
+	 */
+	public void readFile(File file, ProgressListener listener)
+			throws IOException {
+		System.out.println("Reading file " + file);
+
+		clearBoard();
+		setRule(CONWAY_RULE); // Default file rule
+
+		RleReader reader = new RleReader(file);
+		reader.setProgressListener(listener);
+		reader.read(new PatternBuilder() {
+			private int xStart, yStart;
+
+			public void setRule(String rule) {
+				OffHeapSimulation.this.setRule(rule);
+			}
+
+			public void setSize(long width, long height) throws IOException {
+				System.out.println("Size " + width + "/" + height);
+
+				if (width > MAX_PATTERN_SIZE || height > MAX_PATTERN_SIZE)
+					throw new IOException("Pattern too large: " + width + "/"
+							+ height);
+
+				if (boardWidth <= width || boardHeight <= height) {
+					setBoardSize(Math.max(boardWidth, (int) width + 10),
+							Math.max(boardHeight, (int) height + 10));
+					clearBoard();
+				}
+
+				xStart = (boardWidth - (int) width) / 2;
+				yStart = (boardHeight - (int) height) / 2;
+			}
+
+			public void setCells(long x, long y, long length) {
+				// Cells outside of the board are dropped
+				y += yStart;
+				if (y >= boardHeight)
+					return;
+				int from = (int) Math.min(x + xStart, boardWidth);
+				int to = (int) Math.min(x + xStart + length, boardWidth);
+				setBits((int) y, from, to);
+				numLiving += to - from;
+			}
+		});
+	}
+
+	public void saveFile(File file) throws IOException {
+		saveFile(file, null);
+	}
+
+	/**
+	 * Writes the bounding box of the living cells as RLE file
+	 */
+	public void saveFile(File file, ProgressListener listener)
+			throws IOException {
+		long[] row = new long[words];
+		int xMin = boardWidth, xMax = -1, yMin = boardHeight, yMax = -1;
+		for (int y = 0; y < boardHeight; ++y) {
+			board.get((long) y * words, row, words);
+			for (int i = 0; i < words; ++i) {
+				if (row[i] == 0)
+					continue;
+				xMin = Math.min(xMin, (i << 6) + Long.numberOfTrailingZeros(row[i]));
+				xMax = Math.max(xMax, (i << 6) + 63 - Long.numberOfLeadingZeros(row[i]));
+				yMin = Math.min(yMin, y);
+				yMax = y;
+			}
+		}
+		if (xMax < 0)
+			xMin = yMin = 0;
+
+		final int xStart = xMin, yStart = yMin;
+		final int width = xMax - xMin + 1;
+		final long[] buffer = row;
+
+		RleWriter writer = new RleWriter(file);
+		writer.setProgressListener(listener);
+		writer.write(getRule(), width, yMax - yMin + 1, new RleWriter.Rows() {
+			public void getRow(int y, long[] bits) {
+				board.get((long) (yStart + y) * words, buffer, words);
+				BitSimulation.extractBits(buffer, xStart, bits, width);
+			}
+		});
+	}
+
+	public void generate() {
+		long start = System.nanoTime();
+		if (pool == null || boardHeight <= BAND_HEIGHT) {
+			numLiving = generateRows(0, boardHeight);
+		} else {
+			List<Callable<Long>> bands = new ArrayList<Callable<Long>>();
+			for (int y = 0; y < boardHeight; y += BAND_HEIGHT) {
+				final int yStart = y;
+				final int yEnd = Math.min(y + BAND_HEIGHT, boardHeight);
+				bands.add(new Callable<Long>() {
+					public Long call() {
+						return generateRows(yStart, yEnd);
+					}
+				});
+			}
+
+			numLiving = 0;
+			for (Future<Long> band : pool.invokeAll(bands)) {
+				try {
+					numLiving += band.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(ex);
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+		}
+
+		LongStore temp = board;
+		board = tempBoard;
+		tempBoard = temp;
+
+		++numGenerations;
+		Metrics.getInstance().generated(System.nanoTime() - start,
+				(long) boardWidth * boardHeight, numLiving);
+	}
+
+	/**
+	 * Computes rows <code>yStart</code> to <code>yEnd - 1</code> of the next
+	 * generation into <code>tempBoard</code>. Every row is read once into
+	 * a window of three rows.
+	 *
+	 * @return number of living cells in these rows
+	 */
+	private long generateRows(int yStart, int yEnd) {
+		long[] top = new long[words];
+		long[] row = new long[words];
+		long[] bottom = new long[words];
+		long[] out = new long[words];
+
+		readRow((yStart + boardHeight - 1) % boardHeight, top);
+		readRow(yStart, row);
+
+		long living = 0;
+		for (int y = yStart; y < yEnd; ++y) {
+			readRow((y + 1) % boardHeight, bottom);
+			living += BitSimulation.stepRow(top, row, bottom, out,
+					boardWidth, rule);
+			tempBoard.put((long) y * words, out, words);
+
+			long[] temp = top;
+			top = row;
+			row = bottom;
+			bottom = temp;
+		}
+		return living;
+	}
+
+	private void readRow(int y, long[] row) {
+		board.get((long) y * words, row, words);
+	}
+
+	/**
+	 * Sets cells <code>from</code> to <code>to - 1</code> of row y, without
+	 * reading the whole row
+	 */
+	private void setBits(int y, int from, int to) {
+		if (from >= to)
+			return;
+
+		long index = (long) y * words;
+		int first = from >>> 6, last = (to - 1) >>> 6;
+		long firstMask = -1L << (from & 63);
+		long lastMask = -1L >>> (-to & 63);
+		if (first == last) {
+			board.put(index + first, board.get(index + first) | firstMask
+					& lastMask);
+			return;
+		}
+
+		board.put(index + first, board.get(index + first) | firstMask);
+		for (int i = first + 1; i < last; ++i)
+			board.put(index + i, -1L);
+		board.put(index + last, board.get(index + last) | lastMask);
+	}
+
+	private void countLiving() {
+		numLiving = 0;
+		long[] row = new long[words];
+		for (int y = 0; y < boardHeight; ++y) {
+			readRow(y, row);
+			for (long word : row)
+				numLiving += Long.bitCount(word);
+		}
+	}
+
+	/**
+	 * Writes a mapped board back to its file and releases it. The simulation
+	 * must not be used afterwards.
+	 */
+	public void close() throws IOException {
+		if (pool != null)
+			pool.shutdown();
+		if (mappedFile != null) {
+			board.force();
+			tempBoard.force();
+			mappedFile.close();
+		}
+	}
+
+	public long getNumGenerations() {
+		return numGenerations;
+	}
+
+	public long getNumLiving() {
+		return numLiving;
+	}
+
+	public int getBoardWidth() {
+		return boardWidth;
+	}
+
+	public int getBoardHeight() {
+		return boardHeight;
+	}
+
+	public int getBoardCell(int x, int y) {
+		return (int) (board.get((long) y * words + (x >>> 6)) >>> (x & 63)) & 1;
+	}
+
+	public void setBoardCell(int x, int y, int val) {
+		long index = (long) y * words + (x >>> 6);
+		long bit = 1L << (x & 63);
+		long old = board.get(index);
+		long word = val != 0 ? old | bit : old & ~bit;
+		board.put(index, word);
+		numLiving += Long.bitCount(word) - Long.bitCount(old);
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
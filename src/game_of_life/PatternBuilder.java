@@ -0,0 +1,23 @@
+package game_of_life;
+
+import java.io.IOException;
+
+/**
+ * Receives a pattern from a reader, e.g. {@link RleReader}. Coordinates are
+ * relative to the top left corner of the pattern.
+ */
+public interface PatternBuilder {
+
+	void setRule(String rule) throws IOException;
+
+	/**
+	 * Called once with the size from the header before any cells are set
+	 */
+	void setSize(long width, long height) throws IOException;
+
+	/**
+	 * Sets <code>length</code> living cells in row y, starting at x
+	 */
+	void setCells(long x, long y, long length) throws IOException;
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
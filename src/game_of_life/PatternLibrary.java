@@ -0,0 +1,447 @@
+package game_of_life;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Index of the RLE files in a directory tree. Only the headers of the files
+ * are read, see {@link RleReader#readHeader}, in several threads. The index
+ * is kept in a file, an entry is read again only if the modification time
+ * or the length of its file changed. So a rescan of an unchanged collection
+ * only lists the directories.
+ *
+ * Index file format, gzip compressed:
+ * <ul>
+ * <li>magic <code>GOLI</code>, version, number of entries</li>
+ * <li>per entry: path, modification time, length, width, height, rule,
+ * name, comment</li>
+ * </ul>
+ */
+public class PatternLibrary {
+
+	private static final int MAGIC = 0x474F4C49;
+
+	private static final int VERSION = 1;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final String CONWAY_RULE = "23/3";
+
+	/**
+	 * Names, rules and comments are shortened, the index is for finding
+	 * patterns
+	 */
+	private static final int MAX_TEXT_LENGTH = 1 << 10;
+
+	/**
+	 * Files per task of a thread
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * Header of an RLE file
+	 */
+	public static final class Entry implements PatternBuilder {
+
+		private final File file;
+
+		private final long lastModified;
+
+		private final long length;
+
+		private long width = -1;
+
+		private long height = -1;
+
+		private String rule = CONWAY_RULE;
+
+		private String name;
+
+		private String comment = "";
+
+		/*
+		 * Name, file name and comment in lower case, for find
+		 */
+		private String searchText;
+
+		private Entry(File file, long lastModified, long length) {
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+			name = file.getName();
+		}
+
+		public void setRule(String rule) {
+			this.rule = rule;
+		}
+
+		public void setSize(long width, long height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		public void setCells(long x, long y, long length) {
+			// Only the header is read
+		}
+
+		private void setComments(List<String> comments) {
+			StringBuilder text = new StringBuilder();
+			for (String line : comments) {
+				if (line.length() < 2)
+					continue;
+				char type = Character.toUpperCase(line.charAt(1));
+				String value = line.substring(2).trim();
+				if (type == 'N' && value.length() > 0)
+					name = shorten(value);
+				else if (type == 'C' || type == 'O') {
+					if (text.length() > 0)
+						text.append(' ');
+					text.append(value);
+				}
+			}
+			comment = shorten(text.toString());
+		}
+
+		/**
+		 * Rules are stored in the notation of {@link Rule#toString()}, so
+		 * they can be compared
+		 */
+		private void normalizeRule() {
+			try {
+				rule = Rule.parse(rule).toString();
+			} catch (RuntimeException ex) {
+				// Unknown notation, kept as it is
+				rule = shorten(rule);
+			}
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getRule() {
+			return rule;
+		}
+
+		public long getWidth() {
+			return width;
+		}
+
+		public long getHeight() {
+			return height;
+		}
+
+		public String getComment() {
+			return comment;
+		}
+
+		private String getSearchText() {
+			if (searchText == null)
+				searchText = (name + '\n' + file.getName() + '\n' + comment)
+						.toLowerCase();
+			return searchText;
+		}
+
+		private static String shorten(String text) {
+			return text.length() > MAX_TEXT_LENGTH ? text.substring(0,
+					MAX_TEXT_LENGTH) : text;
+		}
+
+		/**
+		 * False if the file has no valid header. Such entries are kept, so
+		 * the file is not read again, but never found.
+		 */
+		public boolean isValid() {
+			return width >= 0;
+		}
+	}
+
+	private final File root;
+
+	private final File indexFile;
+
+	/*
+	 * Entries by absolute path
+	 */
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param indexFile where the index is kept, or null to scan without
+	 *            persistent index
+	 */
+	public PatternLibrary(File root, File indexFile) {
+		this.root = root.getAbsoluteFile();
+		this.indexFile = indexFile;
+		if (indexFile != null && indexFile.exists()) {
+			try {
+				readIndex();
+			} catch (IOException ex) {
+				// A broken index is rebuilt by the next scan
+				System.out.println("Ignoring index " + indexFile + ": "
+						+ ex.getMessage());
+			}
+		}
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	public void setParallelism(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+		this.threads = threads;
+	}
+
+	/**
+	 * Brings the index up to date with the directory tree and writes it.
+	 * Only new and modified files are read.
+	 *
+	 * @param listener receives the number of headers read out of those to
+	 *            read, may be null
+	 */
+	public void scan(final ProgressListener listener) throws IOException {
+		long start = System.nanoTime();
+		List<File> files = new ArrayList<File>();
+		listFiles(root, files);
+
+		Map<String, Entry> oldEntries;
+		synchronized (this) {
+			oldEntries = entries;
+		}
+
+		final Map<String, Entry> newEntries = new HashMap<String, Entry>();
+		final List<Entry> stale = new ArrayList<Entry>();
+		for (File file : files) {
+			String path = file.getPath();
+			long lastModified = file.lastModified(), length = file.length();
+			Entry entry = oldEntries.get(path);
+			if (entry == null || entry.lastModified != lastModified
+					|| entry.length != length) {
+				entry = new Entry(file, lastModified, length);
+				stale.add(entry);
+			}
+			newEntries.put(path, entry);
+		}
+
+		// Read the headers of new and modified files in batches
+		List<Callable<Void>> batches = new ArrayList<Callable<Void>>();
+		final int[] done = new int[1];
+		for (int i = 0; i < stale.size(); i += BATCH_SIZE) {
+			final int from = i, to = Math.min(i + BATCH_SIZE, stale.size());
+			batches.add(new Callable<Void>() {
+				public Void call() {
+					for (int n = from; n < to; ++n)
+						readHeader(stale.get(n));
+					synchronized (done) {
+						done[0] += to - from;
+						if (listener != null)
+							listener.progress(done[0], stale.size());
+					}
+					return null;
+				}
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (Future<Void> batch : pool.invokeAll(batches)) {
+				try {
+					batch.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(ex);
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		synchronized (this) {
+			entries = newEntries;
+		}
+		System.out.println("Scanned " + root + ": " + files.size()
+				+ " files, " + stale.size() + " headers read in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+
+		if (indexFile != null)
+			writeIndex();
+	}
+
+	/**
+	 * Collects the RLE files below a directory, the order is not defined
+	 */
+	private static void listFiles(File dir, List<File> files) {
+		File[] children = dir.listFiles();
+		if (children == null)
+			return;
+		for (File child : children) {
+			if (child.isDirectory())
+				listFiles(child, files);
+			else if (child.getName().toLowerCase().endsWith(".rle"))
+				files.add(child);
+		}
+	}
+
+	private static void readHeader(Entry entry) {
+		List<String> comments = new ArrayList<String>();
+		try {
+			new RleReader(entry.file).readHeader(entry, comments);
+		} catch (FileNotFoundException ex) {
+			// Removed since it was listed
+		} catch (IOException ex) {
+			// No valid RLE file, stays invalid
+			entry.setSize(-1, -1);
+		}
+		entry.setComments(comments);
+		entry.normalizeRule();
+	}
+
+	/**
+	 * Patterns matching all given criteria, sorted by name
+	 *
+	 * @param text part of the name, the file name or the comment, ignoring
+	 *            case, or null
+	 * @param rule rule in any notation of {@link Rule}, or null
+	 * @param maxWidth largest width, or a negative value for any
+	 * @param maxHeight largest height, or a negative value for any
+	 */
+	public List<Entry> find(String text, String rule, long maxWidth,
+			long maxHeight) {
+		if (text != null)
+			text = text.trim().toLowerCase();
+		if (rule != null && rule.trim().length() > 0)
+			rule = Rule.parse(rule.trim()).toString();
+		else
+			rule = null;
+
+		List<Entry> result = new ArrayList<Entry>();
+		synchronized (this) {
+			for (Entry entry : entries.values()) {
+				if (!entry.isValid()
+						|| (rule != null && !rule.equals(entry.rule))
+						|| (maxWidth >= 0 && entry.width > maxWidth)
+						|| (maxHeight >= 0 && entry.height > maxHeight))
+					continue;
+				if (text != null && text.length() > 0
+						&& entry.getSearchText().indexOf(text) < 0)
+					continue;
+				result.add(entry);
+			}
+		}
+
+		Collections.sort(result, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return a.name.compareToIgnoreCase(b.name);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Number of indexed files, including invalid ones
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private void readIndex() throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(indexFile),
+						BUFFER_SIZE), BUFFER_SIZE));
+		try {
+			if (data.readInt() != MAGIC)
+				throw new IOException(indexFile + " is no pattern index");
+			int version = data.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported index version " + version);
+
+			int count = data.readInt();
+			Map<String, Entry> index = new HashMap<String, Entry>();
+			for (int i = 0; i < count; ++i) {
+				String path = data.readUTF();
+				Entry entry = new Entry(new File(path), data.readLong(),
+						data.readLong());
+				entry.width = data.readLong();
+				entry.height = data.readLong();
+				entry.rule = data.readUTF();
+				entry.name = data.readUTF();
+				entry.comment = data.readUTF();
+				index.put(path, entry);
+			}
+
+			synchronized (this) {
+				entries = index;
+			}
+		} finally {
+			data.close();
+		}
+	}
+
+	/**
+	 * Written to a temporary file and renamed like a {@link Checkpoint}
+	 */
+	private void writeIndex() throws IOException {
+		List<Entry> list;
+		synchronized (this) {
+			list = new ArrayList<Entry>(entries.values());
+		}
+
+		File temp = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE),
+				BUFFER_SIZE));
+		try {
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(list.size());
+			for (Entry entry : list) {
+				data.writeUTF(entry.file.getPath());
+				data.writeLong(entry.lastModified);
+				data.writeLong(entry.length);
+				data.writeLong(entry.width);
+				data.writeLong(entry.height);
+				data.writeUTF(entry.rule);
+				data.writeUTF(entry.name);
+				data.writeUTF(entry.comment);
+			}
+		} finally {
+			data.close();
+		}
+
+		Files.move(temp.toPath(), indexFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,342 @@
+package game_of_life;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Frame;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Browses the patterns of a {@link PatternLibrary}. The list is filtered
+ * while typing. The index of the directory is shown at once and brought up
+ * to date in the background.
+ */
+public class PatternLibraryDialog extends JDialog implements ActionListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String INDEX_FILE = ".patterns.idx";
+
+	private static final String[] COLUMNS = { "Name", "Regel", "Breite",
+			"Höhe", "Datei" };
+
+	private PatternLibrary library;
+
+	private List<PatternLibrary.Entry> patterns = new ArrayList<PatternLibrary.Entry>();
+
+	private File selectedFile;
+
+	private JTextField nameField;
+
+	private JTextField ruleField;
+
+	private JSpinner maxWidthSpinner;
+
+	private JSpinner maxHeightSpinner;
+
+	private JLabel statusLabel;
+
+	private JTable table;
+
+	private PatternTableModel tableModel;
+
+	private JButton directoryButton;
+
+	private JButton rescanButton;
+
+	private JButton loadButton;
+
+	private JButton cancelButton;
+
+	private boolean scanning;
+
+	private class PatternTableModel extends AbstractTableModel {
+
+		private static final long serialVersionUID = 1L;
+
+		public int getRowCount() {
+			return patterns.size();
+		}
+
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		public Object getValueAt(int row, int column) {
+			PatternLibrary.Entry entry = patterns.get(row);
+			switch (column) {
+			case 0:
+				return entry.getName();
+			case 1:
+				return entry.getRule();
+			case 2:
+				return entry.getWidth();
+			case 3:
+				return entry.getHeight();
+			default:
+				return library.getRoot().toPath().relativize(
+						entry.getFile().toPath()).toString();
+			}
+		}
+	}
+
+	public PatternLibraryDialog(Frame owner, File root) {
+		super(owner, "Musterbibliothek", true);
+		setContentPane(createContentPane());
+		setSize(new Dimension(700, 500));
+		setLocationRelativeTo(owner);
+		setLibrary(root);
+	}
+
+	/**
+	 * Shows the dialog until a pattern is chosen or the dialog is closed
+	 *
+	 * @return the chosen file or null
+	 */
+	public File showDialog() {
+		selectedFile = null;
+		setVisible(true);
+		return selectedFile;
+	}
+
+	public File getRoot() {
+		return library.getRoot();
+	}
+
+	private JPanel createContentPane() {
+		JPanel panel = new JPanel(new BorderLayout());
+
+		/*
+		 * Filter
+		 */
+
+		JPanel filter = new JPanel(new GridBagLayout());
+		filter.setBorder(BorderFactory.createTitledBorder("Filter"));
+
+		DocumentListener textListener = new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				updatePatterns();
+			}
+
+			public void removeUpdate(DocumentEvent e) {
+				updatePatterns();
+			}
+
+			public void changedUpdate(DocumentEvent e) {
+				updatePatterns();
+			}
+		};
+		ChangeListener sizeListener = new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				updatePatterns();
+			}
+		};
+
+		nameField = new JTextField(15);
+		nameField.getDocument().addDocumentListener(textListener);
+		addFilter(filter, 0, "Name:", nameField);
+
+		ruleField = new JTextField(8);
+		ruleField.getDocument().addDocumentListener(textListener);
+		addFilter(filter, 2, "Regel:", ruleField);
+
+		// 0 means any size
+		maxWidthSpinner = new JSpinner(new SpinnerNumberModel(0, 0,
+				Integer.MAX_VALUE, 10));
+		maxWidthSpinner.addChangeListener(sizeListener);
+		addFilter(filter, 4, "Max. Breite:", maxWidthSpinner);
+
+		maxHeightSpinner = new JSpinner(new SpinnerNumberModel(0, 0,
+				Integer.MAX_VALUE, 10));
+		maxHeightSpinner.addChangeListener(sizeListener);
+		addFilter(filter, 6, "Max. Höhe:", maxHeightSpinner);
+
+		panel.add(filter, BorderLayout.NORTH);
+
+		/*
+		 * Patterns
+		 */
+
+		tableModel = new PatternTableModel();
+		table = new JTable(tableModel);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.addMouseListener(new MouseAdapter() {
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2)
+					loadSelected();
+			}
+		});
+		panel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+		/*
+		 * Status and buttons
+		 */
+
+		JPanel bottom = new JPanel(new BorderLayout());
+		statusLabel = new JLabel(" ");
+		statusLabel.setBorder(BorderFactory.createEmptyBorder(3, 6, 3, 6));
+		bottom.add(statusLabel, BorderLayout.CENTER);
+
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		directoryButton = new JButton("Verzeichnis");
+		rescanButton = new JButton("Neu einlesen");
+		loadButton = new JButton("Laden");
+		cancelButton = new JButton("Abbrechen");
+		for (JButton button : new JButton[] { directoryButton, rescanButton,
+				loadButton, cancelButton }) {
+			button.addActionListener(this);
+			buttons.add(button);
+		}
+		bottom.add(buttons, BorderLayout.EAST);
+		panel.add(bottom, BorderLayout.SOUTH);
+
+		return panel;
+	}
+
+	private static void addFilter(JPanel panel, int x, String label,
+			Component field) {
+		panel.add(new JLabel(label), new GridBagConstraints(x, 0, // x,y
+				1, 1, // w,h
+				0, 0, // weightx, weighty
+				GridBagConstraints.WEST, // anchor
+				GridBagConstraints.NONE, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+		panel.add(field, new GridBagConstraints(x + 1, 0, // x,y
+				1, 1, // w,h
+				1, 0, // weightx, weighty
+				GridBagConstraints.WEST, // anchor
+				GridBagConstraints.HORIZONTAL, // fill
+				new Insets(3, 3, 3, 3), // external padding
+				0, 0)); // inner padding
+	}
+
+	public void actionPerformed(ActionEvent e) {
+		Object source = e.getSource();
+
+		if (source == directoryButton) {
+			JFileChooser chooser = new JFileChooser(library.getRoot());
+			chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+			if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+				setLibrary(chooser.getSelectedFile());
+		} else if (source == rescanButton) {
+			scan();
+		} else if (source == loadButton) {
+			loadSelected();
+		} else if (source == cancelButton) {
+			setVisible(false);
+		}
+	}
+
+	/**
+	 * Shows the patterns of a directory, starting with the stored index
+	 */
+	private void setLibrary(File root) {
+		library = new PatternLibrary(root, new File(root, INDEX_FILE));
+		updatePatterns();
+		scan();
+	}
+
+	private void loadSelected() {
+		int row = table.getSelectedRow();
+		if (row < 0)
+			return;
+		selectedFile = patterns.get(table.convertRowIndexToModel(row))
+				.getFile();
+		setVisible(false);
+	}
+
+	private void updatePatterns() {
+		long maxWidth = ((Integer) maxWidthSpinner.getValue()).intValue();
+		long maxHeight = ((Integer) maxHeightSpinner.getValue()).intValue();
+		try {
+			patterns = library.find(nameField.getText(), ruleField.getText(),
+					maxWidth > 0 ? maxWidth : -1, maxHeight > 0 ? maxHeight
+							: -1);
+			ruleField.setToolTipText(null);
+		} catch (IllegalArgumentException ex) {
+			// Incomplete rule while typing
+			patterns = new ArrayList<PatternLibrary.Entry>();
+			ruleField.setToolTipText(ex.getMessage());
+		}
+		tableModel.fireTableDataChanged();
+		updateStatus();
+	}
+
+	private void updateStatus() {
+		statusLabel.setText(patterns.size() + " von " + library.size()
+				+ " Mustern" + (scanning ? ", lese Verzeichnis..." : ""));
+	}
+
+	/**
+	 * Updates the index in the background, the list is refreshed when done
+	 */
+	private void scan() {
+		if (scanning)
+			return;
+		scanning = true;
+		rescanButton.setEnabled(false);
+		directoryButton.setEnabled(false);
+		updateStatus();
+
+		final PatternLibrary scanned = library;
+		new SwingWorker<Void, Void>() {
+			protected Void doInBackground() throws IOException {
+				scanned.scan(null);
+				return null;
+			}
+
+			protected void done() {
+				scanning = false;
+				rescanButton.setEnabled(true);
+				directoryButton.setEnabled(true);
+				try {
+					get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					// The index may still be usable, e.g. if it cannot be
+					// written
+					ex.getCause().printStackTrace();
+				}
+				updatePatterns();
+			}
+		}.execute();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,7 @@
+package game_of_life;
+
+public interface ProgressListener {
+
+	void progress(long done, long total);
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
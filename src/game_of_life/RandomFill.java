@@ -0,0 +1,80 @@
+package game_of_life;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random cells for the <code>randomizeBoard</code> methods of the engines.
+ * Each random long gives 64 cells. For other densities than 1/2 several
+ * longs are combined bit by bit: with the binary digits of the density
+ * from the lowest, a one digit ORs the next long into the bits and a zero
+ * digit ANDs it, so every bit is set with the density, rounded to 1/2^16.
+ *
+ * The rows are split into bands of {@link #BAND_HEIGHT} rows, each with its
+ * own generator split off a generator of the seed in band order. Bands can
+ * be filled by any number of threads, the cells only depend on the seed.
+ */
+final class RandomFill {
+
+	static final int BAND_HEIGHT = 64;
+
+	private static final int PRECISION = 16;
+
+	private static final int ONE = 1 << PRECISION;
+
+	private final int threshold;
+
+	private final SplittableRandom[] bands;
+
+	RandomFill(long seed, double density, int height) {
+		if (!(density >= 0 && density <= 1))
+			throw new IllegalArgumentException("Invalid density " + density);
+		threshold = (int) Math.round(density * ONE);
+
+		SplittableRandom random = new SplittableRandom(seed);
+		bands = new SplittableRandom[(height + BAND_HEIGHT - 1) / BAND_HEIGHT];
+		for (int i = 0; i < bands.length; ++i)
+			bands[i] = random.split();
+	}
+
+	int getNumBands() {
+		return bands.length;
+	}
+
+	/**
+	 * Fills the bits of the next row of a band, bit x &amp; 63 of word x / 64
+	 * holds cell x. Bits beyond the width are cleared.
+	 *
+	 * @return number of set bits
+	 */
+	int nextRow(int band, long[] row, int width) {
+		SplittableRandom random = bands[band];
+		int words = BitSimulation.numWords(width), count = 0;
+		for (int i = 0; i < words; ++i) {
+			long bits = nextBits(random);
+			if (i == words - 1)
+				bits &= BitSimulation.lastWordMask(width);
+			row[i] = bits;
+			count += Long.bitCount(bits);
+		}
+		return count;
+	}
+
+	private long nextBits(SplittableRandom random) {
+		if (threshold == 0)
+			return 0;
+		if (threshold == ONE)
+			return -1L;
+
+		// The lowest one digit starts with a plain random long
+		int digit = Integer.numberOfTrailingZeros(threshold);
+		long bits = random.nextLong();
+		for (++digit; digit < PRECISION; ++digit) {
+			if ((threshold & (1 << digit)) != 0)
+				bits |= random.nextLong();
+			else
+				bits &= random.nextLong();
+		}
+		return bits;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,202 @@
+package game_of_life;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Streaming reader for RLE files. The file is read in large blocks through a
+ * channel and parsed byte by byte by a small state machine. Runs of living
+ * cells are passed to the {@link PatternBuilder} as a whole.
+ *
+ * Format example: <code>
+ *  #C Comment
+ *  #R Rule
+ *  x = [width], y = [height], rule = [rule]
+ *  bobobobobobobo$bobobobobobobobobob!
+ * </code>
+ * <ul>
+ * <li># are optional</li>
+ * <li>The rule can be given by <code>#R</code> or in the size line, see
+ * {@link Rule} for the notations</li>
+ * <li>Run length encoding can be used. Example: 32b, 10o</li>
+ * <li>$ marks a line break. RLE is also possible. Example: 77$</li>
+ * <li>! marks the end of file</li>
+ * </ul>
+ *
+ * Reading can be cancelled by interrupting the reading thread.
+ */
+public class RleReader {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final int HEADER_BUFFER_SIZE = 1 << 12;
+
+	private final File file;
+
+	private ProgressListener listener;
+
+	public RleReader(File file) {
+		this.file = file;
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	public void read(PatternBuilder builder) throws IOException {
+		long start = System.nanoTime();
+		FileChannel channel = new FileInputStream(file).getChannel();
+		long total = 0;
+		try {
+			total = channel.size();
+			long done = 0;
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] data = buffer.array();
+
+			boolean header = true;
+			StringBuffer line = new StringBuffer();
+			long x = 0, y = 0, runlen = 0;
+
+			int size;
+			while ((size = channel.read(buffer)) >= 0) {
+				if (Thread.interrupted())
+					throw new InterruptedIOException("Reading " + file
+							+ " cancelled");
+
+				int i = 0;
+
+				// Comment lines and size
+				for (; header && i < size; ++i) {
+					char ch = (char) (data[i] & 0xFF);
+					if (ch == '\n' || ch == '\r') {
+						header = !readHeaderLine(line.toString().trim(), builder,
+								null);
+						line.setLength(0);
+					} else {
+						line.append(ch);
+					}
+				}
+
+				// Run length encoded board
+				for (; i < size; ++i) {
+					byte ch = data[i];
+					if (ch >= '0' && ch <= '9') {
+						runlen = runlen * 10 + (ch - '0');
+						continue;
+					}
+
+					switch (ch) {
+					// Dead cells
+					case 'b':
+						x += runlen > 0 ? runlen : 1;
+						runlen = 0;
+						break;
+
+					// Living cells
+					case 'o':
+						long length = runlen > 0 ? runlen : 1;
+						builder.setCells(x, y, length);
+						x += length;
+						runlen = 0;
+						break;
+
+					// Line break
+					case '$':
+						x = 0;
+						y += runlen > 0 ? runlen : 1;
+						runlen = 0;
+						break;
+
+					// End
+					case '!':
+						progress(total, total);
+						return;
+					}
+				}
+
+				done += size;
+				progress(done, total);
+				buffer.clear();
+			}
+
+			if (header)
+				throw new IOException("No width and height defined");
+		} finally {
+			channel.close();
+			Metrics.getInstance().read(total, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Reads only the header up to the size line, which is passed to the
+	 * builder like by {@link #read}. The cells are not read, so this is
+	 * fast even for huge patterns.
+	 *
+	 * @param comments receives the other # lines, e.g. <code>#N name</code>,
+	 *            or null
+	 */
+	public void readHeader(PatternBuilder builder, List<String> comments)
+			throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "ISO-8859-1"), HEADER_BUFFER_SIZE);
+		try {
+			String line;
+			while ((line = in.readLine()) != null)
+				if (readHeaderLine(line.trim(), builder, comments))
+					return;
+			throw new IOException("No width and height defined");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return true if the line contained the size, which ends the header
+	 */
+	private boolean readHeaderLine(String line, PatternBuilder builder,
+			List<String> comments) throws IOException {
+		if (line.length() == 0)
+			return false;
+
+		if (line.charAt(0) == '#') {
+			if (line.length() > 1 && Character.toUpperCase(line.charAt(1)) == 'R')
+				builder.setRule(line.substring(2).trim());
+			else if (comments != null)
+				comments.add(line);
+			return false;
+		}
+
+		long width, height;
+		String rule = null;
+		try {
+			String[] vars = line.split(",");
+			width = Long.parseLong(vars[0].split("=")[1].trim());
+			height = Long.parseLong(vars[1].split("=")[1].trim());
+			for (int n = 2; n < vars.length; ++n) {
+				String[] var = vars[n].split("=");
+				if (var[0].trim().equalsIgnoreCase("rule"))
+					rule = var[1].trim();
+			}
+		} catch (RuntimeException ex) {
+			throw new IOException("No width and height defined");
+		}
+
+		if (rule != null)
+			builder.setRule(rule);
+		builder.setSize(width, height);
+		return true;
+	}
+
+	private void progress(long done, long total) {
+		if (listener != null)
+			listener.progress(done, total);
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
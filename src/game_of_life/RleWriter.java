@@ -0,0 +1,174 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+/**
+ * Writes RLE files, see {@link RleReader} for the format. The rows are
+ * requested as packed bits and the runs are found word by word. The output
+ * is encoded into a reusable buffer, wrapped at 70 columns and written
+ * through a channel.
+ */
+public class RleWriter {
+
+	/**
+	 * Provides the rows of the pattern. Bit x &amp; 63 of word x / 64 holds
+	 * cell x of the row.
+	 */
+	public interface Rows {
+
+		void getRow(int y, long[] bits);
+	}
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final int LINE_LENGTH = 70;
+
+	private final File file;
+
+	private FileChannel channel;
+
+	private ByteBuffer buffer;
+
+	private byte[] data;
+
+	private int column;
+
+	private ProgressListener listener;
+
+	public RleWriter(File file) {
+		this.file = file;
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	public void write(String rule, int width, int height, Rows rows)
+			throws IOException {
+		long startTime = System.nanoTime();
+		channel = new FileOutputStream(file).getChannel();
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		data = buffer.array();
+		try {
+			writeString("#C Saved at " + new Date() + "\n#R " + rule + "\nx = "
+					+ width + ", y = " + height + "\n");
+			column = 0;
+
+			long[] bits = new long[(width + 63) >>> 6];
+			int numBreaks = 0;
+			for (int y = 0; y < height; ++y) {
+				if (Thread.interrupted())
+					throw new InterruptedIOException("Writing " + file
+							+ " cancelled");
+
+				rows.getRow(y, bits);
+
+				int x = 0;
+				while (true) {
+					int start = nextBit(bits, width, x, 0);
+					if (start >= width)
+						break;
+					int end = nextBit(bits, width, start, -1L);
+
+					if (numBreaks > 0) {
+						writeRun(numBreaks, '$');
+						numBreaks = 0;
+					}
+					if (start > x)
+						writeRun(start - x, 'b');
+					writeRun(end - start, 'o');
+					x = end;
+				}
+
+				++numBreaks;
+				if (listener != null)
+					listener.progress(y + 1, height);
+			}
+
+			writeRun(1, '!');
+			writeString("\n");
+			flush();
+		} finally {
+			Metrics.getInstance().written(channel.position(),
+					System.nanoTime() - startTime);
+			channel.close();
+			channel = null;
+			buffer = null;
+			data = null;
+		}
+	}
+
+	/**
+	 * Index of the next bit from <code>from</code> on, which differs from
+	 * the given fill word (0 or -1), or <code>width</code>.
+	 */
+	private static int nextBit(long[] bits, int width, int from, long fill) {
+		int i = from >>> 6;
+		if (i >= bits.length)
+			return width;
+
+		long word = (bits[i] ^ fill) & (-1L << (from & 63));
+		while (word == 0) {
+			if (++i >= bits.length)
+				return width;
+			word = bits[i] ^ fill;
+		}
+		return Math.min((i << 6) + Long.numberOfTrailingZeros(word), width);
+	}
+
+	private void writeRun(int runlen, char ch) throws IOException {
+		int digits = runlen > 1 ? stringSize(runlen) : 0;
+		if (column + digits + 1 > LINE_LENGTH) {
+			put((byte) '\n');
+			column = 0;
+		}
+
+		if (digits > 0) {
+			ensureSpace(digits);
+			int pos = buffer.position() + digits;
+			for (int n = runlen; n > 0; n /= 10)
+				data[--pos] = (byte) ('0' + n % 10);
+			buffer.position(buffer.position() + digits);
+		}
+		put((byte) ch);
+		column += digits + 1;
+	}
+
+	private static int stringSize(int n) {
+		int size = 1;
+		while (n >= 10) {
+			n /= 10;
+			++size;
+		}
+		return size;
+	}
+
+	private void writeString(String s) throws IOException {
+		for (int i = 0; i < s.length(); ++i)
+			put((byte) s.charAt(i));
+	}
+
+	private void put(byte b) throws IOException {
+		ensureSpace(1);
+		buffer.put(b);
+	}
+
+	private void ensureSpace(int size) throws IOException {
+		if (buffer.remaining() < size)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
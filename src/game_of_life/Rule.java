@@ -0,0 +1,332 @@
+package game_of_life;
+
+/**
+ * Generation rule of the Moore neighborhood, compiled into a transition
+ * table. Supported notations:
+ * <ul>
+ * <li><code>23/3</code>: the digits before the slash are the neighbor counts
+ * a living cell survives with, the digits after the slash are the neighbor
+ * counts a dead cell is born with. This is the notation of RLE files.</li>
+ * <li><code>B3/S23</code>: birth and survival counts in any order.</li>
+ * <li>Isotropic non-totalistic rules in Hensel notation, e.g.
+ * <code>B2-a/S12</code> or <code>B3/S23-a4ce</code>. Letters after a count
+ * select the shapes of the neighborhood with that count, a minus excludes
+ * the listed shapes.</li>
+ * </ul>
+ *
+ * Bit 8 - (dy + 1) * 3 - (dx + 1) of a table index holds the cell at
+ * (x + dx, y + dy), the center cell is bit 4. When moving one cell to the
+ * right, the index can be updated by shifting it one bit to the left and
+ * inserting the new column at bits 6, 3 and 0, see {@link #MOVE_MASK}.
+ */
+public class Rule {
+
+	/**
+	 * Bits kept when the index is shifted to the next cell on the right
+	 */
+	static final int MOVE_MASK = 0x1B6;
+
+	static final int CENTER = 1 << 4;
+
+	/**
+	 * Shape letters of the neighborhoods with 0 to 4 neighbors in Hensel
+	 * notation, the shapes with 5 to 8 neighbors are the complements
+	 */
+	private static final String[] LETTERS = { "", "ce", "ceaikn",
+			"ceaiknjqry", "ceaiknjqrtwyz" };
+
+	/**
+	 * One table index of every shape, in the order of {@link #LETTERS}
+	 */
+	private static final int[][] SHAPES = { {}, { 1, 2 },
+			{ 5, 10, 3, 40, 33, 68 },
+			{ 69, 42, 11, 7, 98, 13, 14, 70, 41, 97 },
+			{ 325, 170, 15, 45, 99, 71, 106, 102, 43, 101, 105, 78, 108 } };
+
+	/**
+	 * Letter of every neighborhood without center, or 0 if the count has
+	 * only a single shape
+	 */
+	private static final char[] SHAPE_LETTER = new char[512];
+
+	static {
+		for (int count = 1; count <= 4; ++count) {
+			for (int i = 0; i < SHAPES[count].length; ++i) {
+				char letter = LETTERS[count].charAt(i);
+				int shape = SHAPES[count][i];
+				for (int s = 0; s < 8; ++s) {
+					SHAPE_LETTER[shape] = letter;
+					if (count < 4)
+						SHAPE_LETTER[shape ^ 0x1EF] = letter;
+					// Rotate by 90 degrees, reflect after four rotations
+					shape = s == 3 ? reflect(shape) : rotate(shape);
+				}
+			}
+		}
+	}
+
+	private final byte[] table;
+
+	private final boolean totalistic;
+
+	private final int livingMask;
+
+	private final int deadMask;
+
+	private byte[] blockTable;
+
+	private Rule(byte[] table) {
+		this.table = table;
+
+		int livingMask = 0, deadMask = 0;
+		for (int i = 0; i < 512; ++i) {
+			if (table[i] == 0)
+				continue;
+			if ((i & CENTER) != 0)
+				livingMask |= 1 << Integer.bitCount(i & ~CENTER);
+			else
+				deadMask |= 1 << Integer.bitCount(i);
+		}
+
+		// Totalistic if all neighborhoods with the same count agree
+		boolean totalistic = true;
+		for (int i = 0; i < 512; ++i) {
+			int mask = (i & CENTER) != 0 ? livingMask : deadMask;
+			if ((table[i] != 0) != ((mask & (1 << Integer.bitCount(i
+					& ~CENTER))) != 0))
+				totalistic = false;
+		}
+
+		this.totalistic = totalistic;
+		this.livingMask = livingMask;
+		this.deadMask = deadMask;
+	}
+
+	public static Rule parse(String rule) {
+		String s = rule.trim();
+
+		// B3S23 without slash
+		if (s.indexOf('/') < 0) {
+			for (int n = 1; n < s.length(); ++n) {
+				char ch = Character.toUpperCase(s.charAt(n));
+				if (ch == 'B' || ch == 'S') {
+					s = s.substring(0, n) + "/" + s.substring(n);
+					break;
+				}
+			}
+		}
+
+		String[] parts = s.split("/", -1);
+		if (parts.length > 2)
+			throw new IllegalArgumentException("Invalid rule " + rule);
+
+		String survival = null, birth = null;
+		for (int n = 0; n < parts.length; ++n) {
+			String part = parts[n].trim();
+			char prefix = part.length() > 0 ? Character.toUpperCase(part
+					.charAt(0)) : 0;
+			if (prefix == 'B' && birth == null) {
+				birth = part.substring(1);
+			} else if (prefix == 'S' && survival == null) {
+				survival = part.substring(1);
+			} else if (n == 0) {
+				survival = part;
+			} else if (n == 1 && birth == null) {
+				birth = part;
+			} else {
+				throw new IllegalArgumentException("Invalid rule " + rule);
+			}
+		}
+
+		byte[] table = new byte[512];
+		parseCounts(survival, CENTER, table, rule);
+		parseCounts(birth, 0, table, rule);
+		return new Rule(table);
+	}
+
+	/**
+	 * Sets the table entries of the neighborhoods listed in a Hensel
+	 * condition, e.g. <code>2-a3</code>
+	 */
+	private static void parseCounts(String counts, int center, byte[] table,
+			String rule) {
+		if (counts == null)
+			return;
+
+		int n = 0;
+		while (n < counts.length()) {
+			int count = Character.digit(counts.charAt(n++), 10);
+			if (count < 0 || count > 8)
+				throw new IllegalArgumentException("Invalid rule " + rule);
+
+			boolean exclude = n < counts.length() && counts.charAt(n) == '-';
+			if (exclude)
+				++n;
+			int start = n;
+			while (n < counts.length()
+					&& Character.isLetter(counts.charAt(n)))
+				++n;
+			String letters = counts.substring(start, n).toLowerCase();
+			String valid = LETTERS[Math.min(count, 8 - count)];
+			for (int i = 0; i < letters.length(); ++i)
+				if (valid.indexOf(letters.charAt(i)) < 0)
+					throw new IllegalArgumentException("Invalid rule " + rule);
+			if (exclude && letters.length() == 0)
+				throw new IllegalArgumentException("Invalid rule " + rule);
+
+			for (int i = 0; i < 512; ++i) {
+				if ((i & CENTER) != 0 || Integer.bitCount(i) != count)
+					continue;
+				boolean listed = letters.indexOf(SHAPE_LETTER[i]) >= 0;
+				if (letters.length() == 0 || listed != exclude)
+					table[i | center] = 1;
+			}
+		}
+	}
+
+	private static int rotate(int index) {
+		int result = 0;
+		for (int bit = 0; bit < 9; ++bit) {
+			if ((index & (1 << bit)) == 0)
+				continue;
+			// Bit (1 - dy) * 3 + (1 - dx), (dx, dy) moves to (-dy, dx)
+			int dx = 1 - bit % 3, dy = 1 - bit / 3;
+			result |= 1 << ((1 - dx) * 3 + (1 + dy));
+		}
+		return result;
+	}
+
+	private static int reflect(int index) {
+		int result = 0;
+		for (int bit = 0; bit < 9; ++bit)
+			if ((index & (1 << bit)) != 0)
+				result |= 1 << (bit / 3 * 3 + 2 - bit % 3);
+		return result;
+	}
+
+	/**
+	 * Transition table: entry i is 1 if the center cell of neighborhood i
+	 * is alive in the next generation
+	 */
+	byte[] getTable() {
+		return table;
+	}
+
+	/**
+	 * Transition table of 4x4 blocks to their 2x2 center. Bit y * 4 + x of
+	 * the index holds cell (x, y) of the block, bit (y - 1) * 2 + (x - 1) of
+	 * the entry holds the next state of the center cell (x, y).
+	 */
+	synchronized byte[] getBlockTable() {
+		if (blockTable == null) {
+			blockTable = new byte[1 << 16];
+			for (int cells = 0; cells < 1 << 16; ++cells) {
+				int result = 0;
+				for (int y = 1; y <= 2; ++y) {
+					for (int x = 1; x <= 2; ++x) {
+						int index = 0;
+						for (int dy = -1; dy <= 1; ++dy)
+							for (int dx = -1; dx <= 1; ++dx)
+								if ((cells & (1 << ((y + dy) * 4 + x + dx))) != 0)
+									index |= 1 << (8 - (dy + 1) * 3 - (dx + 1));
+						if (table[index] != 0)
+							result |= 1 << ((y - 1) * 2 + x - 1);
+					}
+				}
+				blockTable[cells] = (byte) result;
+			}
+		}
+		return blockTable;
+	}
+
+	/**
+	 * True if the next state only depends on the number of neighbors
+	 */
+	public boolean isTotalistic() {
+		return totalistic;
+	}
+
+	/**
+	 * True if dead cells without any living neighbor come alive
+	 */
+	public boolean isBirthWithoutNeighbors() {
+		return table[0] != 0;
+	}
+
+	/**
+	 * Bit n is set if a living cell with n neighbors survives. Only valid
+	 * for totalistic rules.
+	 */
+	public int getLivingMask() {
+		return livingMask;
+	}
+
+	/**
+	 * Bit n is set if a dead cell with n neighbors is born. Only valid for
+	 * totalistic rules.
+	 */
+	public int getDeadMask() {
+		return deadMask;
+	}
+
+	/**
+	 * Totalistic rules are written as <code>23/3</code>, other rules in
+	 * Hensel notation <code>B2-a/S12</code>
+	 */
+	public String toString() {
+		if (totalistic) {
+			StringBuffer buffer = new StringBuffer();
+			appendCounts(buffer, livingMask);
+			buffer.append('/');
+			appendCounts(buffer, deadMask);
+			return buffer.toString();
+		}
+
+		StringBuffer buffer = new StringBuffer("B");
+		appendHensel(buffer, 0);
+		buffer.append("/S");
+		appendHensel(buffer, CENTER);
+		return buffer.toString();
+	}
+
+	private static void appendCounts(StringBuffer buffer, int mask) {
+		for (int i = 0; i < 9; ++i)
+			if ((mask & (1 << i)) != 0)
+				buffer.append(i);
+	}
+
+	private void appendHensel(StringBuffer buffer, int center) {
+		for (int count = 0; count <= 8; ++count) {
+			String valid = LETTERS[Math.min(count, 8 - count)];
+			StringBuffer present = new StringBuffer();
+			StringBuffer missing = new StringBuffer();
+			for (int n = 0; n < valid.length(); ++n) {
+				char letter = valid.charAt(n);
+				if (hasShape(count, letter, center))
+					present.append(letter);
+				else
+					missing.append(letter);
+			}
+
+			if (valid.length() == 0) {
+				if (hasShape(count, (char) 0, center))
+					buffer.append(count);
+			} else if (missing.length() == 0) {
+				buffer.append(count);
+			} else if (present.length() > missing.length()) {
+				buffer.append(count).append('-').append(missing);
+			} else if (present.length() > 0) {
+				buffer.append(count).append(present);
+			}
+		}
+	}
+
+	private boolean hasShape(int count, char letter, int center) {
+		for (int i = 0; i < 512; ++i)
+			if ((i & CENTER) == 0 && Integer.bitCount(i) == count
+					&& SHAPE_LETTER[i] == letter)
+				return table[i | center] != 0;
+		return false;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
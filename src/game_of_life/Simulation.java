@@ -1,13 +1,16 @@
 package game_of_life;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Simulation {
 
@@ -19,25 +22,115 @@ public class Simulation {
 
 	private int boardHeight;
 
-	private int numGenerations;
+	private long numGenerations;
 
 	private int numLiving;
 
-	private boolean[] ruleLiving;
+	private Rule rule;
 
-	private boolean[] ruleDead;
+	/*
+	 * Notation of the rule, built once in setRule
+	 */
+	private String ruleName;
+
+	/*
+	 * Next cell value of every neighborhood index: the number of neighbors
+	 * for living cells, used as color by the canvas, or 0
+	 */
+	private byte[] cellTable;
+
+	/*
+	 * Vector kernel for the inner cells of totalistic rules, or null
+	 */
+	private CellKernel kernel;
+
+	private ForkJoinPool pool;
+
+	/*
+	 * Active tiles
+	 */
+
+	private int tilesX;
+
+	private int tilesY;
+
+	private boolean[] tileChanged;
+
+	private boolean[] nextTileChanged;
+
+	private boolean[] tileActive;
+
+	private int[] tileLiving;
+
+	/*
+	 * Bounding box of the living cells of each tile: xMin, yMin, xMax, yMax
+	 */
+	private int[] tileBounds;
+
+	/*
+	 * Tiles edited from outside, their living cells, bounds and hash are
+	 * unknown
+	 */
+	private boolean[] tileDirty;
+
+	/*
+	 * Tiles whose cells were flipped by the history, only their bounds are
+	 * unknown
+	 */
+	private boolean[] tileBoundsDirty;
+
+	/*
+	 * XOR of the hashes of the living cells of each tile, updated with the
+	 * cells which are born or die
+	 */
+	private long[] tileHash;
+
+	/*
+	 * Modification count at the last change of each tile, for views which
+	 * only update the changed tiles, see getModification()
+	 */
+	private long[] tileModified;
+
+	private long modification;
+
+	private int numActiveTiles;
+
+	private long numActiveCells;
+
+	private int bandHeight = DEFAULT_BAND_HEIGHT;
 
 	private static final String CONWAY_RULE = "23/3";
+
+	private static final int DEFAULT_BAND_HEIGHT = 64;
+
+	static final int TILE_SIZE = 32;
+
+	private static final int MAX_PATTERN_SIZE = 1 << 16;
 	
-	private static final Random rand = new Random();
+	/*
+	 * Every simulation has its own generator, so concurrent simulations
+	 * neither contend for it nor disturb each other's sequence
+	 */
+	private Random rand = new Random();
+
+	private final boolean quiet;
 
 	public Simulation() {
+		this(false);
+	}
+
+	/**
+	 * @param quiet no messages about the board, the rule and files, e.g.
+	 *            for many simulations which would contend for System.out
+	 */
+	public Simulation(boolean quiet) {
+		this.quiet = quiet;
 		setRule(CONWAY_RULE);
 	}
 	
 	public void setBoardSize(int width, int height) {
 		if (board == null || height > board.length || width > board[0].length) {
-			System.out.println("Creating board: width=" + width + ", height="
+			log("Creating board: width=" + width + ", height="
 					+ height);
 
 			byte[][] newBoard = new byte[height][width];
@@ -56,50 +149,190 @@ public class Simulation {
 
 		boardWidth = width;
 		boardHeight = height;
+
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tileChanged = new boolean[tilesX * tilesY];
+		nextTileChanged = new boolean[tilesX * tilesY];
+		tileActive = new boolean[tilesX * tilesY];
+		tileLiving = new int[tilesX * tilesY];
+		tileBounds = new int[4 * tilesX * tilesY];
+		tileDirty = new boolean[tilesX * tilesY];
+		tileBoundsDirty = new boolean[tilesX * tilesY];
+		tileHash = new long[tilesX * tilesY];
+		tileModified = new long[tilesX * tilesY];
+		markAllTilesChanged();
+
+		// Both boards and the tile state, the board may have no rows
+		long cells = board.length > 0 ? (long) board.length * board[0].length
+				: 0;
+		Metrics.getInstance().setBoardMemory(2 * cells + 33L * tilesX * tilesY);
 	}
 
 	public void setRule(String rule) {
-		ruleLiving = new boolean[9];
-		ruleDead = new boolean[9];
+		Rule r = Rule.parse(rule);
+		byte[] table = r.getTable();
+		byte[] cells = new byte[table.length];
+		for (int i = 0; i < table.length; ++i)
+			if (table[i] != 0)
+				cells[i] = (byte) Math.max(Integer.bitCount(i & ~Rule.CENTER), 1);
+		this.rule = r;
+		ruleName = r.toString();
+		cellTable = cells;
+		if (kernel != null)
+			setKernelRule();
+		markAllTilesChanged();
+		log("Rule loaded: " + getRule());
+	}
 
-		char[] ch = rule.toCharArray();
+	private void log(String message) {
+		if (!quiet)
+			System.out.println(message);
+	}
+
+	public String getRule() {
+		return ruleName;
+	}
 
-		int n = 0;
-		for (; n < ch.length; ++n) {
-			if (ch[n] == '/')
-				break;
-			ruleLiving[Character.digit(ch[n], 10)] = true;
+	/**
+	 * Computes the cells with the Vector API if the module
+	 * <code>jdk.incubator.vector</code> is available. Only totalistic rules
+	 * are vectorized, other rules always use the lookup table.
+	 *
+	 * @return false if the Vector API is not available
+	 */
+	public boolean setVectorized(boolean vectorized) {
+		if (!vectorized) {
+			kernel = null;
+			return true;
 		}
+		if (kernel != null)
+			return true;
 
-		for (++n; n < ch.length; ++n)
-			ruleDead[Character.digit(ch[n], 10)] = true;
+		try {
+			kernel = (CellKernel) Class.forName("game_of_life.VectorKernel")
+					.getDeclaredConstructor().newInstance();
+		} catch (Exception ex) {
+			Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+			System.out.println("Vector API not available: " + cause);
+			return false;
+		} catch (LinkageError ex) {
+			// Module jdk.incubator.vector is missing
+			System.out.println("Vector API not available: " + ex);
+			return false;
+		}
+		setKernelRule();
+		return true;
+	}
 
-		System.out.println("Rule loaded: " + getRule());
+	public boolean isVectorized() {
+		return kernel != null;
 	}
 
-	public String getRule() {
-		StringBuffer buffer = new StringBuffer();
-		for (int i = 0; i < 9; ++i)
-			if (ruleLiving[i])
-				buffer.append(i);
-		buffer.append('/');
-		for (int i = 0; i < 9; ++i)
-			if (ruleDead[i])
-				buffer.append(i);
-		return buffer.toString();
+	private void setKernelRule() {
+		byte[] deadCells = new byte[9], livingCells = new byte[9];
+		for (int n = 0; n <= 8; ++n) {
+			byte value = (byte) Math.max(n, 1);
+			if ((rule.getDeadMask() & (1 << n)) != 0)
+				deadCells[n] = value;
+			if ((rule.getLivingMask() & (1 << n)) != 0)
+				livingCells[n] = value;
+		}
+		kernel.setRule(deadCells, livingCells);
 	}
 
+	/**
+	 * Makes {@link #randomizeBoard()} reproducible
+	 */
+	public void setSeed(long seed) {
+		rand = new Random(seed);
+	}
+
+	/**
+	 * Fills the board with density 1/2, the seed is drawn from the generator
+	 * of {@link #setSeed}
+	 */
 	public void randomizeBoard() {
-		numGenerations = 0;
+		randomizeBoard(rand.nextLong(), 0.5);
+	}
+
+	/**
+	 * Fills the whole board at random, every cell lives with the given
+	 * density
+	 */
+	public void randomizeBoard(long seed, double density) {
+		randomizeBoard(seed, density, 0, 0, boardWidth, boardHeight);
+	}
+
+	/**
+	 * Fills a rectangle at random and clears the rest of the board, e.g. a
+	 * soup in the center. The bands of {@link RandomFill} are filled in
+	 * parallel, the cells only depend on the seed, the density and the size
+	 * of the rectangle.
+	 */
+	public synchronized void randomizeBoard(long seed, double density,
+			final int xStart, final int yStart, final int width,
+			final int height) {
+		if (xStart < 0 || yStart < 0 || width < 0 || height < 0
+				|| xStart + width > boardWidth
+				|| yStart + height > boardHeight)
+			throw new IllegalArgumentException("Region outside of the board: "
+					+ xStart + "/" + yStart + " " + width + "x" + height);
+
+		for (int y = 0; y < boardHeight; ++y)
+			if (y < yStart || y >= yStart + height || width < boardWidth)
+				Arrays.fill(board[y], 0, boardWidth, (byte) 0);
+
+		final RandomFill fill = new RandomFill(seed, density, height);
 		numLiving = 0;
-		for (int y = 0; y < boardHeight; ++y) {
-			for (int x = 0; x < boardWidth; ++x) {
-				board[y][x] = (byte)rand.nextInt(2);
-				
-				if (board[y][x] > 0)
-					++numLiving;
+		if (fill.getNumBands() <= 1) {
+			if (width > 0 && height > 0)
+				numLiving = fillBand(fill, 0, xStart, yStart, width, height);
+		} else {
+			List<Callable<Integer>> bands = new ArrayList<Callable<Integer>>();
+			for (int band = 0; band < fill.getNumBands(); ++band) {
+				final int b = band;
+				bands.add(new Callable<Integer>() {
+					public Integer call() {
+						return fillBand(fill, b, xStart, yStart, width, height);
+					}
+				});
+			}
+
+			ForkJoinPool p = pool != null ? pool : ForkJoinPool.commonPool();
+			for (Future<Integer> band : p.invokeAll(bands)) {
+				try {
+					numLiving += band.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(ex);
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(ex.getCause());
+				}
 			}
 		}
+
+		numGenerations = 0;
+		markAllTilesChanged();
+	}
+
+	/**
+	 * Fills the rows of one band of the rectangle
+	 *
+	 * @return number of living cells
+	 */
+	private int fillBand(RandomFill fill, int band, int xStart, int yStart,
+			int width, int height) {
+		long[] bits = new long[BitSimulation.numWords(width)];
+		int yEnd = Math.min((band + 1) * RandomFill.BAND_HEIGHT, height);
+		int living = 0;
+		for (int y = band * RandomFill.BAND_HEIGHT; y < yEnd; ++y) {
+			living += fill.nextRow(band, bits, width);
+			byte[] row = board[yStart + y];
+			for (int x = 0; x < width; ++x)
+				row[xStart + x] = (byte) ((bits[x >>> 6] >>> x) & 1);
+		}
+		return living;
 	}
 
 	public void clearBoard() {
@@ -108,233 +341,633 @@ public class Simulation {
 				board[y][x] = 0;
 		numGenerations = 0;
 		numLiving = 0;
+		markAllTilesChanged();
+	}
+
+	public void readFile(File file) throws IOException {
+		readFile(file, null);
 	}
 
 	/**
-	 * Format example: <code>
-	 *  #C Comment
-	 *  #R Rule
-	 *  x = [width], y = [height]
-	 *  bobobobobobobo$bobobobobobobobobob!
-	 * </code>
-	 * <ul>
-	 * <li># are optional</li>
-	 * <li>Run length encoding can be used. Example: 32b, 10o</li>
-	 * <li>$ marks a line break. RLE is also possible. Example: 77$</li>
-	 * <li>! marks the end of file</li>
-	 * </ul>
+	 * Reads an RLE file, see {@link RleReader} for the format. The board is
+	 * enlarged if the pattern does not fit, and the pattern is centered.
 	 */
-	public void readFile(File file) throws IOException {
-		System.out.println("Reading file " + file);
+	public void readFile(File file, ProgressListener listener)
+			throws IOException {
+		restore(loadFile(file, listener));
+	}
 
-		clearBoard();
-		setRule(CONWAY_RULE); // Default file rule
+	/**
+	 * Reads an RLE file into a checkpoint like {@link #readFile}, without
+	 * touching the board. The board can be replaced with {@link #restore}
+	 * once the whole file was read. Reading stops with an
+	 * {@link java.io.InterruptedIOException} if the thread is interrupted.
+	 */
+	public Checkpoint loadFile(File file, ProgressListener listener)
+			throws IOException {
+		log("Reading file " + file);
+
+		StagedPattern pattern = new StagedPattern(boardWidth, boardHeight);
+		RleReader reader = new RleReader(file);
+		reader.setProgressListener(listener);
+		reader.read(pattern);
+		return pattern.toCheckpoint();
+	}
 
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		try {
-			String line = null;
-			while (reader.ready()) {
-				line = reader.readLine().trim();
-				if (line.charAt(0) != '#')
-					break;
-
-				if (Character.toUpperCase(line.charAt(1)) == 'R')
-					setRule(line.substring(2).trim());
-			}
+	/**
+	 * Collects a pattern in packed rows, on a board of the given size or
+	 * larger if the pattern does not fit. It only touches the simulation
+	 * for its messages, so it can run beside a generation.
+	 */
+	private final class StagedPattern implements PatternBuilder {
+
+		private String rule = Rule.parse(CONWAY_RULE).toString(); // Default file rule
+
+		private int width;
+
+		private int height;
+
+		private int xStart;
+
+		private int yStart;
+
+		private long[][] rows;
+
+		private long living;
 
-			if (line == null)
-				throw new IOException("No width and height defined");
+		StagedPattern(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		public void setRule(String rule) {
+			this.rule = Rule.parse(rule).toString();
+		}
 
-			String[] vars = line.split(",");
-			int width = Integer.parseInt(vars[0].split("=")[1].trim());
-			int height = Integer.parseInt(vars[1].split("=")[1].trim());
+		public void setSize(long width, long height) throws IOException {
+			log("Size " + width + "/" + height);
 
-			System.out.println("Size " + width + "/" + height);
-			
-			if (boardWidth <= width || boardHeight <= height) {
-				setBoardSize(width + 10, height + 10);
-				clearBoard();
+			if (width > MAX_PATTERN_SIZE || height > MAX_PATTERN_SIZE)
+				throw new IOException("Pattern too large: " + width + "/"
+						+ height);
+
+			if (this.width <= width || this.height <= height) {
+				this.width = (int) width + 10;
+				this.height = (int) height + 10;
 			}
+			rows = new long[this.height][BitSimulation.numWords(this.width)];
 
-			int xStart = (boardWidth - width) / 2;
-			int yStart = (boardHeight - height) / 2;
-
-			// Read run length encoded board
-			int x = xStart, y = yStart, runlen = 0;
-			while (reader.ready()) {
-				char ch = (char)reader.read();
-
-				switch (ch) {
-				// Dead cell
-				case 'b':
-					if (runlen > 0) {
-						for (int i = 0; i < runlen; ++i)
-							board[y][x++] = 0;
-					} else
-						board[y][x++] = 0;
-					runlen = 0;
-					break;
-
-				// Living cell
-				case 'o':
-					if (runlen > 0) {
-						for (int i = 0; i < runlen; ++i)
-							board[y][x++] = 1;
-						numLiving += runlen;
-					} else {
-						board[y][x++] = 1;
-						++numLiving;
-					}
-					runlen = 0;
-					break;
-
-				// Line break
-				case '$':
-					x = xStart;
-					if (runlen > 0) {
-						y += runlen;
-					} else
-						++y;
-					runlen = 0;
-					break;
-
-				// End
-				case '!':
-					return;
-
-				default:
-					// RLE
-					if (Character.isDigit(ch)) {
-						runlen *= 10;
-						runlen += Character.digit(ch, 10);
+			xStart = (this.width - (int) width) / 2;
+			yStart = (this.height - (int) height) / 2;
+		}
+
+		public void setCells(long x, long y, long length) {
+			// Cells outside of the board are dropped
+			y += yStart;
+			if (y >= height)
+				return;
+			int from = (int) Math.min(x + xStart, width);
+			int to = (int) Math.min(x + xStart + length, width);
+			BitSimulation.setBits(rows[(int) y], from, to);
+			living += to - from;
+		}
+
+		Checkpoint toCheckpoint() {
+			return new Checkpoint(width, height, rule, 0, living, rows);
+		}
+	}
+
+	public void saveFile(File file) throws IOException {
+		saveFile(file, null);
+	}
+
+	/**
+	 * Writes the bounding box of the living cells as RLE file. The board is
+	 * copied first, so the simulation may go on in another thread while the
+	 * file is written.
+	 */
+	public void saveFile(File file, ProgressListener listener)
+			throws IOException {
+		createCheckpoint().writeRle(file, listener);
+	}
+
+	/**
+	 * Use several threads for {@link #generate()}. The board is split into
+	 * horizontal bands of <code>bandHeight</code> rows which are computed
+	 * concurrently. A thread count of one restores serial generation. The
+	 * band height is rounded up to whole tile rows.
+	 */
+	public void setParallelism(int threads, int bandHeight) {
+		if (threads < 1 || bandHeight < 1)
+			throw new IllegalArgumentException("Invalid parallelism: threads="
+					+ threads + ", bandHeight=" + bandHeight);
+
+		if (pool != null)
+			pool.shutdown();
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		this.bandHeight = bandHeight;
+	}
+
+	public int getNumThreads() {
+		return pool != null ? pool.getParallelism() : 1;
+	}
+
+	public int getBandHeight() {
+		return bandHeight;
+	}
+
+	public synchronized void generate() {
+		long start = System.nanoTime();
+		++modification;
+		markActiveTiles();
+
+		int bandTiles = (bandHeight + TILE_SIZE - 1) / TILE_SIZE;
+		if (pool == null || tilesY <= bandTiles) {
+			numLiving = generateTiles(0, tilesY);
+		} else {
+			List<Callable<Integer>> bands = new ArrayList<Callable<Integer>>();
+			for (int ty = 0; ty < tilesY; ty += bandTiles) {
+				final int tyStart = ty;
+				final int tyEnd = Math.min(ty + bandTiles, tilesY);
+				bands.add(new Callable<Integer>() {
+					public Integer call() {
+						return generateTiles(tyStart, tyEnd);
 					}
-					break;
+				});
+			}
+
+			// Each band counts its own living cells, sum them up afterwards
+			numLiving = 0;
+			for (Future<Integer> band : pool.invokeAll(bands)) {
+				try {
+					numLiving += band.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(ex);
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+		}
+
+		boolean[] tempChanged = tileChanged;
+		tileChanged = nextTileChanged;
+		nextTileChanged = tempChanged;
+
+		byte[][] temp = board;
+		board = tempBoard;
+		tempBoard = temp;
+
+		++numGenerations;
+		Metrics.getInstance().generated(System.nanoTime() - start,
+				numActiveCells, numLiving);
+	}
+
+	/**
+	 * A tile has to be computed if it or one of its neighbors changed in the
+	 * last generation. All other tiles keep their cells, and since they did
+	 * not change, <code>tempBoard</code> already holds the same cells.
+	 */
+	private void markActiveTiles() {
+		numActiveTiles = 0;
+		numActiveCells = 0;
+		for (int ty = 0; ty < tilesY; ++ty) {
+			int height = Math.min(TILE_SIZE, boardHeight - ty * TILE_SIZE);
+			for (int tx = 0; tx < tilesX; ++tx) {
+				boolean active = false;
+				for (int dy = -1; dy <= 1 && !active; ++dy) {
+					int row = ((ty + dy + tilesY) % tilesY) * tilesX;
+					for (int dx = -1; dx <= 1 && !active; ++dx)
+						active = tileChanged[row + (tx + dx + tilesX) % tilesX];
+				}
+
+				tileActive[ty * tilesX + tx] = active;
+				if (active) {
+					++numActiveTiles;
+					numActiveCells += height
+							* Math.min(TILE_SIZE, boardWidth - tx * TILE_SIZE);
 				}
 			}
-		} finally {
-			reader.close();
 		}
 	}
 
-	public void saveFile(File file) throws IOException {
-		int xMin = Integer.MAX_VALUE, xMax = Integer.MIN_VALUE;
-		int yMin = Integer.MAX_VALUE, yMax = Integer.MIN_VALUE;
-		for (int y = 0; y < boardHeight; ++y) {
-			for (int x = 0; x < boardWidth; ++x) {
+	private void markAllTilesChanged() {
+		if (tileChanged != null) {
+			Arrays.fill(tileChanged, true);
+			Arrays.fill(tileDirty, true);
+			Arrays.fill(tileModified, ++modification);
+		}
+	}
+
+	/**
+	 * Computes the active tiles in tile rows <code>tyStart</code> to
+	 * <code>tyEnd - 1</code> of the next generation into
+	 * <code>tempBoard</code>.
+	 *
+	 * @return number of living cells in these tile rows
+	 */
+	private int generateTiles(int tyStart, int tyEnd) {
+		CellKernel.Result result = new CellKernel.Result();
+		int living = 0;
+		for (int ty = tyStart; ty < tyEnd; ++ty) {
+			for (int tx = 0; tx < tilesX; ++tx) {
+				int tile = ty * tilesX + tx;
+				if (tileActive[tile]) {
+					if (tileDirty[tile])
+						scanTile(tx, ty);
+					generateTile(tx, ty, result);
+				}
+				else
+					nextTileChanged[tile] = false;
+				living += tileLiving[tile];
+			}
+		}
+		return living;
+	}
+
+	private void generateTile(int tx, int ty, CellKernel.Result result) {
+		int xStart = tx * TILE_SIZE;
+		int yStart = ty * TILE_SIZE;
+		int xEnd = Math.min(xStart + TILE_SIZE, boardWidth);
+		int yEnd = Math.min(yStart + TILE_SIZE, boardHeight);
+
+		// The kernel leaves the cells at the left and right edge and the
+		// remainder of partial vectors to the lookup table
+		CellKernel k = rule.isTotalistic() ? kernel : null;
+		int from = Math.max(xStart, 1);
+		int to = Math.min(xEnd, boardWidth - 1);
+
+		result.clear(xEnd);
+		int yMin = yEnd, yMax = -1;
+		for (int y = yStart; y < yEnd; ++y) {
+			byte[] top = board[(y + boardHeight - 1) % boardHeight];
+			byte[] row = board[y];
+			byte[] bottom = board[(y + 1) % boardHeight];
+			byte[] out = tempBoard[y];
+
+			int living = result.living;
+			if (k != null && from < to) {
+				if (xStart < from)
+					generateCells(top, row, bottom, out, y, xStart, from,
+							result);
+				int x = k.step(top, row, bottom, out, from, to,
+						(long) y * boardWidth, result);
+				if (x < xEnd)
+					generateCells(top, row, bottom, out, y, x, xEnd, result);
+			} else {
+				generateCells(top, row, bottom, out, y, xStart, xEnd, result);
+			}
+
+			if (result.living != living) {
+				if (y < yMin)
+					yMin = y;
+				yMax = y;
+			}
+		}
+
+		int tile = ty * tilesX + tx;
+		tileLiving[tile] = result.living;
+		tileHash[tile] ^= result.hash;
+		nextTileChanged[tile] = result.changed;
+		if (result.changed)
+			tileModified[tile] = modification;
+		tileDirty[tile] = false;
+		tileBoundsDirty[tile] = false;
+		setTileBounds(tile, result.xMin, yMin, result.xMax, yMax);
+	}
+
+	/**
+	 * Computes cells <code>from</code> to <code>to - 1</code> of row y with
+	 * the lookup table
+	 */
+	private void generateCells(byte[] top, byte[] row, byte[] bottom,
+			byte[] out, int y, int from, int to, CellKernel.Result result) {
+		byte[] cells = cellTable;
+
+		// Neighborhood index of the cell left of the range, see Rule
+		int left = (from + boardWidth - 1) % boardWidth;
+		int index = (column(top, row, bottom, left) << 1)
+				| column(top, row, bottom, from);
+
+		int living = 0;
+		boolean changed = false;
+		long hash = 0;
+		int xMin = result.xMin, xMax = result.xMax;
+		for (int x = from; x < to; ++x) {
+			int right = x + 1 < boardWidth ? x + 1 : 0;
+			index = ((index << 1) & Rule.MOVE_MASK)
+					| column(top, row, bottom, right);
+
+			byte next = cells[index], old = row[x];
+			if (next != old) {
+				changed = true;
+				// Cell was born or died
+				if (next == 0 || old == 0)
+					hash ^= cellHash(y, x);
+			}
+			out[x] = next;
+
+			if (next != 0) {
+				++living;
+				if (x < xMin)
+					xMin = x;
+				if (x > xMax)
+					xMax = x;
+			}
+		}
+
+		result.living += living;
+		result.changed |= changed;
+		result.hash ^= hash;
+		result.xMin = xMin;
+		result.xMax = xMax;
+	}
+
+	/**
+	 * Living cells of column x as bits 6, 3 and 0 of a neighborhood index.
+	 * Cells hold their neighbor count, which is positive for living cells.
+	 */
+	private static int column(byte[] top, byte[] row, byte[] bottom, int x) {
+		return ((-top[x] >>> 31) << 6) | ((-row[x] >>> 31) << 3)
+				| (-bottom[x] >>> 31);
+	}
+
+	private void setTileBounds(int tile, int xMin, int yMin, int xMax,
+			int yMax) {
+		tileBounds[4 * tile] = xMin;
+		tileBounds[4 * tile + 1] = yMin;
+		tileBounds[4 * tile + 2] = xMax;
+		tileBounds[4 * tile + 3] = yMax;
+	}
+
+	/**
+	 * Recounts the living cells of a tile edited from outside
+	 */
+	private void scanTile(int tx, int ty) {
+		int xStart = tx * TILE_SIZE;
+		int yStart = ty * TILE_SIZE;
+		int xEnd = Math.min(xStart + TILE_SIZE, boardWidth);
+		int yEnd = Math.min(yStart + TILE_SIZE, boardHeight);
+
+		int living = 0;
+		long hash = 0;
+		int xMin = xEnd, yMin = yEnd, xMax = -1, yMax = -1;
+		for (int y = yStart; y < yEnd; ++y) {
+			for (int x = xStart; x < xEnd; ++x) {
 				if (board[y][x] != 0) {
+					++living;
+					hash ^= cellHash(y, x);
 					if (x < xMin)
 						xMin = x;
 					if (x > xMax)
 						xMax = x;
-
 					if (y < yMin)
 						yMin = y;
-					if (y > yMax)
-						yMax = y;
+					yMax = y;
 				}
 			}
 		}
 
-		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-		try {
-			writer.write("#C Saved at " + new Date() + "\n#R "
-					+ getRule() + "\n");
-
-			writer.write("#R " + getRule() + "\n");
-			
-			int numBreaks = 0;
-			for (int y = yMin; y <= yMax; ++y) {
-
-				int runlen = 0;
-				char lastCh = 'b';
-				for (int x = xMin; x <= xMax; ++x) {
-					char ch = board[y][x] != 0 ? 'o' : 'b';
-					if (lastCh != ch) {
-						if (numBreaks > 0) {
-							if (numBreaks > 1)
-								writer.write(Integer.toString(numBreaks));
-							writer.write("$\n");
-							numBreaks = 0;
-						}
-
-						if (runlen > 0) {
-							if (runlen > 1)
-								writer.write(Integer.toString(runlen));
-							writer.write(lastCh);
-						}
-
-						runlen = 1;
-						lastCh = ch;
-					} else
-						++runlen;
-				}
+		int tile = ty * tilesX + tx;
+		tileLiving[tile] = living;
+		tileHash[tile] = hash;
+		tileDirty[tile] = false;
+		tileBoundsDirty[tile] = false;
+		setTileBounds(tile, xMin, yMin, xMax, yMax);
+	}
 
-				if (lastCh == 'o') {
-					if (runlen > 1)
-						writer.write(Integer.toString(runlen));
-					writer.write('o');
+	/**
+	 * Cells whose value changed in the last generation, as pairs of the
+	 * index y * width + x and the XOR of the old and the new value. Besides
+	 * the cells which were born or died, this includes living cells whose
+	 * neighbor count changed. Only the tiles which changed are compared
+	 * with the previous board, which is still kept in the second buffer.
+	 */
+	int[] getChangedCells() {
+		int[] cells = new int[128];
+		int numCells = 0;
+		for (int ty = 0; ty < tilesY; ++ty) {
+			for (int tx = 0; tx < tilesX; ++tx) {
+				if (!tileChanged[ty * tilesX + tx])
+					continue;
+
+				int xStart = tx * TILE_SIZE;
+				int xEnd = Math.min(xStart + TILE_SIZE, boardWidth);
+				int yEnd = Math.min((ty + 1) * TILE_SIZE, boardHeight);
+				for (int y = ty * TILE_SIZE; y < yEnd; ++y) {
+					if (cells.length - numCells < 2 * TILE_SIZE)
+						cells = Arrays.copyOf(cells, 2 * cells.length + 2
+								* TILE_SIZE);
+
+					// Skips equal runs with the intrinsic of Arrays.mismatch
+					byte[] row = board[y], previous = tempBoard[y];
+					int index = y * boardWidth;
+					for (int x = xStart; x < xEnd; ++x) {
+						int skip = Arrays.mismatch(row, x, xEnd, previous, x,
+								xEnd);
+						if (skip < 0)
+							break;
+						x += skip;
+						cells[numCells++] = index + x;
+						cells[numCells++] = row[x] ^ previous[x];
+					}
 				}
+			}
+		}
+		return Arrays.copyOf(cells, numCells);
+	}
 
-				++numBreaks;
+	/**
+	 * Applies cells of {@link #getChangedCells()} and sets the generation
+	 * count. Since the values are XORed, the same cells lead one generation
+	 * forward or back. Used to move through the history.
+	 */
+	void toggleCells(int[] cells, long generation) {
+		++modification;
+		for (int i = 0; i < cells.length; i += 2) {
+			int y = cells[i] / boardWidth, x = cells[i] % boardWidth;
+			byte old = board[y][x];
+			board[y][x] = (byte) (old ^ cells[i + 1]);
+
+			int tile = (y / TILE_SIZE) * tilesX + x / TILE_SIZE;
+			if ((old == 0) != (board[y][x] == 0)) {
+				int living = old == 0 ? 1 : -1;
+				numLiving += living;
+				tileLiving[tile] += living;
+				tileHash[tile] ^= cellHash(y, x);
+				tileBoundsDirty[tile] = true;
 			}
+			tileChanged[tile] = true;
+			tileModified[tile] = modification;
+		}
+		numGenerations = generation;
+	}
 
-			writer.write("!\n");
-		} finally {
-			writer.close();
+	/**
+	 * Values of the living cells row by row. A {@link Checkpoint} only keeps
+	 * which cells live, these values restore their neighbor counts.
+	 */
+	byte[] getLivingValues() {
+		int count = 0;
+		for (int y = 0; y < boardHeight; ++y)
+			for (int x = 0; x < boardWidth; ++x)
+				count += -board[y][x] >>> 31;
+
+		byte[] values = new byte[count];
+		int i = 0;
+		for (int y = 0; y < boardHeight; ++y)
+			for (int x = 0; x < boardWidth; ++x)
+				if (board[y][x] != 0)
+					values[i++] = board[y][x];
+		return values;
+	}
+
+	/**
+	 * Sets the values of the living cells after the checkpoint of
+	 * {@link #getLivingValues()} was restored
+	 */
+	void setLivingValues(byte[] values) {
+		int i = 0;
+		for (int y = 0; y < boardHeight; ++y)
+			for (int x = 0; x < boardWidth; ++x)
+				if (board[y][x] != 0)
+					board[y][x] = values[i++];
+	}
+
+	/**
+	 * Packs the board into a checkpoint. The checkpoint does not share
+	 * memory with the board and can be written while the simulation goes on.
+	 * Like {@link #restore} it waits for a running generation to finish. It
+	 * takes the bounding box from the tiles, so saving an RLE file does not
+	 * scan the rows again.
+	 */
+	public synchronized Checkpoint createCheckpoint() {
+		long[][] rows = new long[boardHeight][BitSimulation.numWords(boardWidth)];
+		for (int y = 0; y < boardHeight; ++y) {
+			byte[] row = board[y];
+			long[] bits = rows[y];
+			for (int x = 0; x < boardWidth; ++x)
+				bits[x >>> 6] |= (long) (-row[x] >>> 31) << x;
 		}
+		int[] box = getBoundingBox();
+		return new Checkpoint(boardWidth, boardHeight, getRule(),
+				numGenerations, numLiving, rows, box != null ? box
+						: new int[] { 0, 0, -1, -1 });
 	}
 
-	public void generate() {
+	/**
+	 * Continues the simulation from a checkpoint
+	 */
+	public synchronized void restore(Checkpoint checkpoint) {
+		if (checkpoint.getWidth() != boardWidth
+				|| checkpoint.getHeight() != boardHeight)
+			setBoardSize(checkpoint.getWidth(), checkpoint.getHeight());
+		if (!checkpoint.getRule().equals(getRule()))
+			setRule(checkpoint.getRule());
+
+		long[][] rows = checkpoint.getRows();
 		numLiving = 0;
 		for (int y = 0; y < boardHeight; ++y) {
+			byte[] row = board[y];
+			long[] bits = rows[y];
 			for (int x = 0; x < boardWidth; ++x) {
-				byte neighbors = 0;
-
-				int bottom = (y + 1) % boardHeight;
-				int top = (y + boardHeight - 1) % boardHeight;
-				int right = (x + 1) % boardWidth;
-				int left = (x + boardWidth - 1) % boardWidth;
-
-				// Neighbors on the right
-				if (board[top][right] != 0)
-					++neighbors;
-				if (board[y][right] != 0)
-					++neighbors;
-				if (board[bottom][right] != 0)
-					++neighbors;
-
-				// Neighbors over and under the cell
-				if (board[top][x] != 0)
-					++neighbors;
-				if (board[bottom][x] != 0)
-					++neighbors;
-
-				// Neighbors on the left
-				if (board[top][left] != 0)
-					++neighbors;
-				if (board[y][left] != 0)
-					++neighbors;
-				if (board[bottom][left] != 0)
-					++neighbors;
+				row[x] = (byte) ((bits[x >>> 6] >>> x) & 1);
+				numLiving += row[x];
+			}
+		}
+		numGenerations = checkpoint.getGeneration();
+		markAllTilesChanged();
+	}
 
-				if (board[y][x] != 0)
-					tempBoard[y][x] = ruleLiving[neighbors] ? neighbors : 0;
-				else
-					tempBoard[y][x] = ruleDead[neighbors] ? neighbors : 0;
+	/**
+	 * Bounding box of all living cells as { xMin, yMin, xMax, yMax }, or
+	 * null if the board is empty. Combines the bounds kept for every tile,
+	 * only tiles edited since the last generation are scanned.
+	 */
+	public int[] getBoundingBox() {
+		int[] box = null;
+		for (int ty = 0; ty < tilesY; ++ty) {
+			for (int tx = 0; tx < tilesX; ++tx) {
+				int tile = ty * tilesX + tx;
+				if (tileDirty[tile] || tileBoundsDirty[tile])
+					scanTile(tx, ty);
+				if (tileLiving[tile] == 0)
+					continue;
+
+				int i = 4 * tile;
+				if (box == null) {
+					box = new int[] { tileBounds[i], tileBounds[i + 1],
+							tileBounds[i + 2], tileBounds[i + 3] };
+				} else {
+					box[0] = Math.min(box[0], tileBounds[i]);
+					box[1] = Math.min(box[1], tileBounds[i + 1]);
+					box[2] = Math.max(box[2], tileBounds[i + 2]);
+					box[3] = Math.max(box[3], tileBounds[i + 3]);
+				}
+			}
+		}
+		return box;
+	}
 
-				if (tempBoard[y][x] != 0)
-					++numLiving;
+	/**
+	 * Hash of the living cells. Equal boards have equal hashes, the hash
+	 * is kept up to date with the cells which are born or die.
+	 */
+	public long getHash() {
+		long hash = 0;
+		for (int ty = 0; ty < tilesY; ++ty) {
+			for (int tx = 0; tx < tilesX; ++tx) {
+				int tile = ty * tilesX + tx;
+				if (tileDirty[tile])
+					scanTile(tx, ty);
+				hash ^= tileHash[tile];
 			}
 		}
+		return hash;
+	}
 
-		byte[][] temp = board;
-		board = tempBoard;
-		tempBoard = temp;
+	/**
+	 * Living cells, bit y * width + x is set for cell (x, y)
+	 */
+	public BitSet getLivingCells() {
+		BitSet cells = new BitSet(boardWidth * boardHeight);
+		for (int y = 0; y < boardHeight; ++y)
+			for (int x = 0; x < boardWidth; ++x)
+				if (board[y][x] != 0)
+					cells.set(y * boardWidth + x);
+		return cells;
+	}
 
-		++numGenerations;
+	/**
+	 * Random looking hash of a cell position
+	 */
+	private long cellHash(int y, int x) {
+		return cellHash((long) y * boardWidth + x);
+	}
+
+	/**
+	 * Hash of the cell at <code>y * width + x</code>
+	 */
+	static long cellHash(long position) {
+		long z = position * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
-	public int getNumGenerations() {
+
+	public int getNumTiles() {
+		return tilesX * tilesY;
+	}
+
+	/**
+	 * Number of tiles computed in the last generation
+	 */
+	public int getNumActiveTiles() {
+		return numActiveTiles;
+	}
+
+	public long getNumGenerations() {
 		return numGenerations;
 	}
 
@@ -350,8 +983,33 @@ public class Simulation {
 		return boardHeight;
 	}
 
-	public void setBoardCell(int x, int y, int val) {
+	/**
+	 * Edits a cell between two generations. Like {@link #generate()} it
+	 * holds the lock of the simulation, an edit during a generation could
+	 * otherwise get lost in the swap of the tile flags and leave the cell
+	 * in only one of the two boards.
+	 */
+	public synchronized void setBoardCell(int x, int y, int val) {
 		board[y][x] = (byte)val;
+		int tile = (y / TILE_SIZE) * tilesX + x / TILE_SIZE;
+		tileChanged[tile] = true;
+		tileDirty[tile] = true;
+		tileModified[tile] = ++modification;
+	}
+
+	/**
+	 * Counter which grows with every generation and every edit of the board
+	 */
+	long getModification() {
+		return modification;
+	}
+
+	/**
+	 * Value of {@link #getModification()} when the tile last changed. Tiles
+	 * are numbered row by row in steps of {@link #TILE_SIZE} cells.
+	 */
+	long getTileModification(int tile) {
+		return tileModified[tile];
 	}
 
 	public byte[][] getBoard() {
@@ -0,0 +1,342 @@
+package game_of_life;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simulation on an unbounded plane. The plane is split into chunks of 64x64
+ * cells, stored bit-packed like in {@link BitSimulation} and kept in a hash
+ * map keyed by the chunk coordinates. Only chunks with living cells are
+ * stored: a chunk is created when cells on the border of a neighbor may
+ * give birth to cells in it, and freed as soon as it becomes empty. Memory
+ * and work per generation scale with the living region.
+ */
+public class SparseSimulation {
+
+	private static final int CHUNK_SIZE = 64;
+
+	private static final String CONWAY_RULE = "23/3";
+
+	private static final long[] EMPTY = new long[CHUNK_SIZE];
+
+	private Map<Long, long[]> chunks = new HashMap<Long, long[]>();
+
+	private long numGenerations;
+
+	private long numLiving;
+
+	private long numCellsUpdated;
+
+	private Rule rule;
+
+	public SparseSimulation() {
+		setRule(CONWAY_RULE);
+	}
+
+	/**
+	 * Rules which give birth to cells without neighbors are not supported,
+	 * since the whole plane would come alive.
+	 */
+	public void setRule(String rule) {
+		Rule r = Rule.parse(rule);
+		if (r.isBirthWithoutNeighbors())
+			throw new IllegalArgumentException("Rule " + r
+					+ " not supported on an unbounded plane");
+		this.rule = r;
+		System.out.println("Rule loaded: " + getRule());
+	}
+
+	public String getRule() {
+		return rule.toString();
+	}
+
+	public void clearBoard() {
+		chunks.clear();
+		numGenerations = 0;
+		numLiving = 0;
+	}
+
+	public void readFile(File file) throws IOException {
+		readFile(file, null);
+	}
+
+	/**
+	 * Reads an RLE file, see {@link RleReader} for the format. The pattern
+	 * is centered around the origin.
+	 */
+	public void readFile(File file, ProgressListener listener)
+			throws IOException {
+		System.out.println("Reading file " + file);
+
+		clearBoard();
+		setRule(CONWAY_RULE); // Default file rule
+
+		RleReader reader = new RleReader(file);
+		reader.setProgressListener(listener);
+		reader.read(new PatternBuilder() {
+			private long xStart, yStart;
+
+			public void setRule(String rule) {
+				SparseSimulation.this.setRule(rule);
+			}
+
+			public void setSize(long width, long height) {
+				System.out.println("Size " + width + "/" + height);
+				xStart = -width / 2;
+				yStart = -height / 2;
+			}
+
+			public void setCells(long x, long y, long length) {
+				x += xStart;
+				y += yStart;
+				long end = x + length;
+				while (x < end) {
+					long[] chunk = getChunk(Math.floorDiv(x, CHUNK_SIZE),
+							Math.floorDiv(y, CHUNK_SIZE), true);
+					int from = Math.floorMod(x, CHUNK_SIZE);
+					int to = (int) Math.min(from + end - x, CHUNK_SIZE);
+					long bits = (-1L >>> (CHUNK_SIZE - (to - from))) << from;
+					int r = Math.floorMod(y, CHUNK_SIZE);
+					numLiving += Long.bitCount(bits & ~chunk[r]);
+					chunk[r] |= bits;
+					x += to - from;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the bounding box of the living cells as RLE file
+	 */
+	public void saveFile(File file) throws IOException {
+		final long[] box = getBoundingBox();
+		if (box == null) {
+			new RleWriter(file).write(getRule(), 0, 0, null);
+			return;
+		}
+		final long width = box[2] - box[0] + 1;
+		long height = box[3] - box[1] + 1;
+		if (width > Integer.MAX_VALUE || height > Integer.MAX_VALUE)
+			throw new IOException("Pattern too large: " + width + "/" + height);
+
+		new RleWriter(file).write(getRule(), (int) width, (int) height,
+				new RleWriter.Rows() {
+					public void getRow(int y, long[] bits) {
+						for (int i = 0; i < bits.length; ++i) {
+							long x = box[0] + ((long) i << 6);
+							long word = getWord(x, box[1] + y);
+							if (i == bits.length - 1)
+								word &= BitSimulation.lastWordMask((int) width);
+							bits[i] = word;
+						}
+					}
+				});
+	}
+
+	/**
+	 * Returns the 64 cells of row y starting at x
+	 */
+	private long getWord(long x, long y) {
+		long cx = Math.floorDiv(x, CHUNK_SIZE);
+		long cy = Math.floorDiv(y, CHUNK_SIZE);
+		int shift = Math.floorMod(x, CHUNK_SIZE);
+		int r = Math.floorMod(y, CHUNK_SIZE);
+
+		long word = getChunk(cx, cy, false)[r] >>> shift;
+		if (shift != 0)
+			word |= getChunk(cx + 1, cy, false)[r] << (CHUNK_SIZE - shift);
+		return word;
+	}
+
+	public void generate() {
+		long start = System.nanoTime();
+
+		// Empty chunks next to living border cells may get new cells
+		Set<Long> keys = new HashSet<Long>(chunks.keySet());
+		for (Map.Entry<Long, long[]> entry : chunks.entrySet()) {
+			long cx = chunkX(entry.getKey()), cy = chunkY(entry.getKey());
+			long[] chunk = entry.getValue();
+
+			long left = 0, right = 0;
+			for (long row : chunk) {
+				left |= row & 1;
+				right |= row >>> 63;
+			}
+			boolean top = chunk[0] != 0, bottom = chunk[CHUNK_SIZE - 1] != 0;
+
+			for (int dy = -1; dy <= 1; ++dy) {
+				for (int dx = -1; dx <= 1; ++dx) {
+					if ((dx < 0 && left == 0) || (dx > 0 && right == 0)
+							|| (dy < 0 && !top) || (dy > 0 && !bottom))
+						continue;
+					keys.add(key(cx + dx, cy + dy));
+				}
+			}
+		}
+
+		Map<Long, long[]> next = new HashMap<Long, long[]>();
+		numLiving = 0;
+		for (Long key : keys) {
+			long cx = chunkX(key), cy = chunkY(key);
+			long[] chunk = new long[CHUNK_SIZE];
+			int count = generateChunk(cx, cy, chunk);
+			if (count > 0) {
+				next.put(key, chunk);
+				numLiving += count;
+			}
+		}
+		long cells = (long) keys.size() * CHUNK_SIZE * CHUNK_SIZE;
+		numCellsUpdated += cells;
+
+		chunks = next;
+		++numGenerations;
+		Metrics.getInstance().generated(System.nanoTime() - start, cells,
+				numLiving);
+		Metrics.getInstance().setBoardMemory(
+				(long) chunks.size() * CHUNK_SIZE * 8);
+	}
+
+	private int generateChunk(long cx, long cy, long[] out) {
+		long[] n = getChunk(cx, cy - 1, false);
+		long[] s = getChunk(cx, cy + 1, false);
+		long[] w = getChunk(cx - 1, cy, false);
+		long[] e = getChunk(cx + 1, cy, false);
+		long[] nw = getChunk(cx - 1, cy - 1, false);
+		long[] ne = getChunk(cx + 1, cy - 1, false);
+		long[] sw = getChunk(cx - 1, cy + 1, false);
+		long[] se = getChunk(cx + 1, cy + 1, false);
+		long[] c = getChunk(cx, cy, false);
+
+		int count = 0;
+		for (int r = 0; r < CHUNK_SIZE; ++r) {
+			// Rows above and below, taken from the neighbor chunks at the border
+			long t, tw, te, b, bw, be;
+			if (r > 0) {
+				t = c[r - 1];
+				tw = w[r - 1];
+				te = e[r - 1];
+			} else {
+				t = n[CHUNK_SIZE - 1];
+				tw = nw[CHUNK_SIZE - 1];
+				te = ne[CHUNK_SIZE - 1];
+			}
+			if (r < CHUNK_SIZE - 1) {
+				b = c[r + 1];
+				bw = w[r + 1];
+				be = e[r + 1];
+			} else {
+				b = s[0];
+				bw = sw[0];
+				be = se[0];
+			}
+
+			long m = c[r];
+			long word = BitSimulation.evolve((t << 1) | (tw >>> 63), t,
+					(t >>> 1) | (te << 63), (m << 1) | (w[r] >>> 63), m,
+					(m >>> 1) | (e[r] << 63), (b << 1) | (bw >>> 63), b,
+					(b >>> 1) | (be << 63), rule);
+			out[r] = word;
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	private long[] getChunk(long cx, long cy, boolean create) {
+		long key = key(cx, cy);
+		long[] chunk = chunks.get(key);
+		if (chunk == null) {
+			if (!create)
+				return EMPTY;
+			chunk = new long[CHUNK_SIZE];
+			chunks.put(key, chunk);
+		}
+		return chunk;
+	}
+
+	private static long key(long cx, long cy) {
+		return (cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	private static long chunkX(long key) {
+		return key >> 32;
+	}
+
+	private static long chunkY(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * Bounding box of all living cells as { xMin, yMin, xMax, yMax }, or
+	 * null if the plane is empty
+	 */
+	public long[] getBoundingBox() {
+		long[] box = null;
+		for (Map.Entry<Long, long[]> entry : chunks.entrySet()) {
+			long x0 = chunkX(entry.getKey()) * CHUNK_SIZE;
+			long y0 = chunkY(entry.getKey()) * CHUNK_SIZE;
+			long[] chunk = entry.getValue();
+			for (int r = 0; r < CHUNK_SIZE; ++r) {
+				if (chunk[r] == 0)
+					continue;
+				long xMin = x0 + Long.numberOfTrailingZeros(chunk[r]);
+				long xMax = x0 + 63 - Long.numberOfLeadingZeros(chunk[r]);
+				if (box == null) {
+					box = new long[] { xMin, y0 + r, xMax, y0 + r };
+				} else {
+					box[0] = Math.min(box[0], xMin);
+					box[1] = Math.min(box[1], y0 + r);
+					box[2] = Math.max(box[2], xMax);
+					box[3] = Math.max(box[3], y0 + r);
+				}
+			}
+		}
+		return box;
+	}
+
+	public long getNumGenerations() {
+		return numGenerations;
+	}
+
+	public long getNumLiving() {
+		return numLiving;
+	}
+
+	/**
+	 * Number of chunks with living cells
+	 */
+	public int getNumChunks() {
+		return chunks.size();
+	}
+
+	/**
+	 * Total number of cells computed in all generations so far
+	 */
+	public long getNumCellsUpdated() {
+		return numCellsUpdated;
+	}
+
+	public void setBoardCell(long x, long y, int val) {
+		long cx = Math.floorDiv(x, CHUNK_SIZE), cy = Math.floorDiv(y, CHUNK_SIZE);
+		long[] chunk = getChunk(cx, cy, val != 0);
+		if (chunk == EMPTY)
+			return;
+
+		int r = Math.floorMod(y, CHUNK_SIZE);
+		long bit = 1L << Math.floorMod(x, CHUNK_SIZE);
+		long old = chunk[r];
+		chunk[r] = val != 0 ? old | bit : old & ~bit;
+		numLiving += Long.bitCount(chunk[r]) - Long.bitCount(old);
+	}
+
+	public int getBoardCell(long x, long y) {
+		long[] chunk = getChunk(Math.floorDiv(x, CHUNK_SIZE),
+				Math.floorDiv(y, CHUNK_SIZE), false);
+		return (int) (chunk[Math.floorMod(y, CHUNK_SIZE)]
+				>>> Math.floorMod(x, CHUNK_SIZE)) & 1;
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,366 @@
+package game_of_life;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Worker process of a distributed simulation, see {@link Coordinator}. A
+ * worker owns a horizontal strip of the torus, stored bit-packed like in
+ * {@link BitSimulation} with one halo row above and below. Before every
+ * generation the workers send their first and last row to the neighbor
+ * strips and receive the halo rows in exchange.
+ *
+ * Usage: <code>StripWorker coordinator-port</code>
+ */
+public class StripWorker {
+
+	/*
+	 * Commands of the coordinator
+	 */
+
+	static final int INIT = 1;
+
+	static final int LOAD = 2;
+
+	static final int RANDOMIZE = 3;
+
+	static final int SET_RULE = 4;
+
+	static final int GENERATE = 5;
+
+	static final int SAVE = 6;
+
+	static final int QUIT = 7;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final DataInputStream in;
+
+	private final DataOutputStream out;
+
+	private final ServerSocket haloServer;
+
+	private int index;
+
+	private int numWorkers;
+
+	private int width;
+
+	private int height;
+
+	private int yStart;
+
+	private int yEnd;
+
+	private Rule rule;
+
+	/*
+	 * Rows 1 to yEnd - yStart hold the strip, the first and last row are
+	 * the halos
+	 */
+
+	private long[][] board;
+
+	private long[][] tempBoard;
+
+	private long numGenerations;
+
+	private long numLiving;
+
+	/*
+	 * Halo connections to the strips above and below
+	 */
+
+	private Connection up;
+
+	private Connection down;
+
+	private final ExecutorService sender = Executors
+			.newSingleThreadExecutor();
+
+	private static class Connection {
+
+		final Socket socket;
+
+		final DataInputStream in;
+
+		final DataOutputStream out;
+
+		final ByteBuffer inBuffer;
+
+		final ByteBuffer outBuffer;
+
+		Connection(Socket socket, int words) throws IOException {
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream(), BUFFER_SIZE));
+			out = new DataOutputStream(new BufferedOutputStream(
+					socket.getOutputStream(), BUFFER_SIZE));
+			inBuffer = ByteBuffer.allocate(8 * words);
+			outBuffer = ByteBuffer.allocate(8 * words);
+		}
+
+		void writeRow(long[] row) throws IOException {
+			outBuffer.clear();
+			outBuffer.asLongBuffer().put(row);
+			out.write(outBuffer.array());
+			out.flush();
+		}
+
+		void readRow(long[] row) throws IOException {
+			in.readFully(inBuffer.array());
+			inBuffer.clear();
+			inBuffer.asLongBuffer().get(row);
+		}
+
+		void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	public StripWorker(int port) throws IOException {
+		InetAddress localhost = InetAddress.getLoopbackAddress();
+		haloServer = new ServerSocket(0, 1, localhost);
+
+		Socket socket = new Socket(localhost, port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream(), BUFFER_SIZE));
+		out = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream(), BUFFER_SIZE));
+
+		// Tell the coordinator where the upper neighbor has to connect to
+		out.writeInt(haloServer.getLocalPort());
+		out.flush();
+	}
+
+	public void run() throws IOException {
+		try {
+			while (true) {
+				int command;
+				try {
+					command = in.readInt();
+				} catch (EOFException ex) {
+					return;
+				}
+
+				switch (command) {
+				case INIT:
+					init();
+					break;
+				case LOAD:
+					load(new File(in.readUTF()));
+					out.writeUTF(rule.toString());
+					out.writeLong(numLiving);
+					break;
+				case RANDOMIZE:
+					randomize(in.readLong(), in.readDouble());
+					out.writeLong(numLiving);
+					break;
+				case SET_RULE:
+					rule = Rule.parse(in.readUTF());
+					out.writeLong(numLiving);
+					break;
+				case GENERATE:
+					long n = in.readLong();
+					for (long i = 0; i < n; ++i)
+						generate();
+					out.writeLong(numLiving);
+					break;
+				case SAVE:
+					save(new File(in.readUTF()));
+					out.writeLong(numLiving);
+					break;
+				case QUIT:
+					return;
+				default:
+					throw new IOException("Unknown command " + command);
+				}
+				out.flush();
+			}
+		} finally {
+			sender.shutdown();
+			if (up != null)
+				up.close();
+			if (down != null)
+				down.close();
+			haloServer.close();
+		}
+	}
+
+	/**
+	 * Receives the strip and connects to the neighbors. Every worker
+	 * connects to the strip below and accepts the strip above.
+	 */
+	private void init() throws IOException {
+		index = in.readInt();
+		numWorkers = in.readInt();
+		width = in.readInt();
+		height = in.readInt();
+		yStart = in.readInt();
+		yEnd = in.readInt();
+		rule = Rule.parse(in.readUTF());
+		int downPort = in.readInt();
+
+		int words = BitSimulation.numWords(width);
+		board = new long[yEnd - yStart + 2][words];
+		tempBoard = new long[yEnd - yStart + 2][words];
+		numGenerations = 0;
+		numLiving = 0;
+
+		if (numWorkers > 1) {
+			down = new Connection(new Socket(InetAddress.getLoopbackAddress(),
+					downPort), words);
+			up = new Connection(haloServer.accept(), words);
+		}
+
+		System.out.println("Worker " + index + ": rows " + yStart + " to "
+				+ (yEnd - 1));
+		out.writeLong(8L * board.length * words * 2);
+	}
+
+	private void load(File file) throws IOException {
+		for (long[] row : board)
+			Arrays.fill(row, 0);
+		rule = Rule.parse("23/3"); // Default file rule
+
+		new RleReader(file).read(new PatternBuilder() {
+			private long xOffset, yOffset;
+
+			public void setRule(String r) {
+				rule = Rule.parse(r);
+			}
+
+			public void setSize(long w, long h) {
+				// Centered on the torus, like Simulation.readFile
+				xOffset = (width - w) / 2;
+				yOffset = (height - h) / 2;
+			}
+
+			public void setCells(long x, long y, long length) {
+				// Other rows and cells outside of the board are dropped
+				y += yOffset;
+				if (y < yStart || y >= yEnd)
+					return;
+				long from = Math.max(x + xOffset, 0);
+				long to = Math.min(x + xOffset + length, width);
+				if (from < to)
+					BitSimulation.setBits(board[(int) (y - yStart) + 1],
+							(int) from, (int) to);
+			}
+		});
+		countLiving();
+	}
+
+	/**
+	 * Fills the strip with the bands of {@link RandomFill} like the other
+	 * engines, so the board depends neither on the number of workers nor on
+	 * the engine. The rows of the first band above the strip are generated
+	 * and dropped.
+	 */
+	private void randomize(long seed, double density) {
+		RandomFill fill = new RandomFill(seed, density, height);
+		int band = yStart / RandomFill.BAND_HEIGHT;
+		long[] skipped = new long[BitSimulation.numWords(width)];
+		for (int y = band * RandomFill.BAND_HEIGHT; y < yStart; ++y)
+			fill.nextRow(band, skipped, width);
+
+		for (int y = yStart; y < yEnd; ++y)
+			fill.nextRow(y / RandomFill.BAND_HEIGHT, board[y - yStart + 1],
+					width);
+		numGenerations = 0;
+		countLiving();
+	}
+
+	private void generate() throws IOException {
+		exchangeHalos();
+
+		int rows = yEnd - yStart;
+		numLiving = 0;
+		for (int y = 1; y <= rows; ++y)
+			numLiving += BitSimulation.stepRow(board[y - 1], board[y],
+					board[y + 1], tempBoard[y], width, rule);
+
+		long[][] temp = board;
+		board = tempBoard;
+		tempBoard = temp;
+		++numGenerations;
+	}
+
+	/**
+	 * Sends the first row up and the last row down while the halos are
+	 * received, so large rows can not block both sides of a connection
+	 */
+	private void exchangeHalos() throws IOException {
+		final int rows = yEnd - yStart;
+		if (numWorkers == 1) {
+			System.arraycopy(board[rows], 0, board[0], 0, board[0].length);
+			System.arraycopy(board[1], 0, board[rows + 1], 0,
+					board[0].length);
+			return;
+		}
+
+		final long[][] current = board;
+		Future<Void> sent = sender.submit(new Callable<Void>() {
+			public Void call() throws IOException {
+				up.writeRow(current[1]);
+				down.writeRow(current[rows]);
+				return null;
+			}
+		});
+
+		down.readRow(board[rows + 1]);
+		up.readRow(board[0]);
+
+		try {
+			sent.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Halo exchange interrupted", ex);
+		} catch (ExecutionException ex) {
+			throw new IOException("Halo exchange failed", ex.getCause());
+		}
+	}
+
+	private void save(File file) throws IOException {
+		RleWriter writer = new RleWriter(file);
+		writer.write(rule.toString(), width, yEnd - yStart,
+				new RleWriter.Rows() {
+					public void getRow(int y, long[] bits) {
+						System.arraycopy(board[y + 1], 0, bits, 0, bits.length);
+					}
+				});
+	}
+
+	private void countLiving() {
+		numLiving = 0;
+		for (int y = 1; y <= yEnd - yStart; ++y)
+			for (long word : board[y])
+				numLiving += Long.bitCount(word);
+	}
+
+	public static void main(String[] argv) throws IOException {
+		if (argv.length != 1) {
+			System.err.println("Usage: StripWorker coordinator-port");
+			System.exit(1);
+		}
+		new StripWorker(Integer.parseInt(argv[0])).run();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,263 @@
+package game_of_life;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs many small simulations of random boards, one for every rule and
+ * seed, on all processors and writes one CSV line per run. Every
+ * simulation has its own random generator, so a run only depends on its
+ * rule and seed. Usage: <code>SweepRunner [options]</code>
+ * <ul>
+ * <li>-r rules: comma separated rules, see {@link Rule}. Digits in brackets
+ * are optional, all combinations are run, e.g. <code>B3[678]/S23</code>
+ * stands for the 8 rules from <code>B3/S23</code> to
+ * <code>B3678/S23</code> (default B3/S23)</li>
+ * <li>-s seed: first seed (default 0)</li>
+ * <li>-c count: number of seeds per rule (default 10)</li>
+ * <li>-w width, -h height: board size (default 64)</li>
+ * <li>-d density: share of living cells of the random fill (default 0.5)</li>
+ * <li>-q size: side of a random square in the center of an otherwise empty
+ * board, 0 for the whole board (default 0)</li>
+ * <li>-n generations: generation to stop at (default 1000)</li>
+ * <li>-p period: stop at still lifes and oscillators up to this period
+ * (default 30)</li>
+ * <li>-g generations: population sample interval of the growth curve
+ * (default 10)</li>
+ * <li>-t threads: number of threads (default all processors)</li>
+ * <li>-o file: CSV file (default sweep.csv)</li>
+ * </ul>
+ *
+ * Columns: rule, seed, generations run, final population, period (0 if
+ * none was found), first generation of the cycle (-1 if none), growth
+ * curve as populations separated by spaces. The lines are written as the
+ * runs finish, not in the order of rules and seeds.
+ */
+public class SweepRunner {
+
+	private static final int DEFAULT_SIZE = 64;
+
+	private static final int DEFAULT_GENERATIONS = 1000;
+
+	private static final int DEFAULT_PERIOD = 30;
+
+	private static final int DEFAULT_SAMPLE_INTERVAL = 10;
+
+	private static final String HEADER = "rule,seed,generations,population,period,stabilized,growth";
+
+	private List<String> rules;
+
+	private long firstSeed;
+
+	private int numSeeds = 10;
+
+	private int width = DEFAULT_SIZE;
+
+	private int height = DEFAULT_SIZE;
+
+	private double density = 0.5;
+
+	private int soupSize;
+
+	private long generations = DEFAULT_GENERATIONS;
+
+	private int maxPeriod = DEFAULT_PERIOD;
+
+	private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private File outputFile = new File("sweep.csv");
+
+	public SweepRunner(String[] argv) {
+		String rulePatterns = "B3/S23";
+		for (int n = 0; n < argv.length; ++n) {
+			String arg = argv[n];
+			if (n + 1 >= argv.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = argv[++n];
+
+			if (arg.equals("-r"))
+				rulePatterns = value;
+			else if (arg.equals("-s"))
+				firstSeed = Long.parseLong(value);
+			else if (arg.equals("-c"))
+				numSeeds = Integer.parseInt(value);
+			else if (arg.equals("-w"))
+				width = Integer.parseInt(value);
+			else if (arg.equals("-h"))
+				height = Integer.parseInt(value);
+			else if (arg.equals("-d"))
+				density = Double.parseDouble(value);
+			else if (arg.equals("-q"))
+				soupSize = Integer.parseInt(value);
+			else if (arg.equals("-n"))
+				generations = Long.parseLong(value);
+			else if (arg.equals("-p"))
+				maxPeriod = Integer.parseInt(value);
+			else if (arg.equals("-g"))
+				sampleInterval = Integer.parseInt(value);
+			else if (arg.equals("-t"))
+				threads = Integer.parseInt(value);
+			else if (arg.equals("-o"))
+				outputFile = new File(value);
+			else
+				throw new IllegalArgumentException("Unknown option " + arg);
+		}
+
+		if (numSeeds < 1 || width < 1 || height < 1 || maxPeriod < 1
+				|| sampleInterval < 1 || threads < 1 || !(density >= 0)
+				|| !(density <= 1) || soupSize < 0 || soupSize > width
+				|| soupSize > height)
+			throw new IllegalArgumentException("Invalid option value");
+		rules = expandRules(rulePatterns);
+	}
+
+	/**
+	 * All rules of the comma separated patterns, in the notation of
+	 * {@link Rule#toString()} and without duplicates
+	 */
+	static List<String> expandRules(String patterns) {
+		Set<String> rules = new LinkedHashSet<String>();
+		for (String pattern : patterns.split(","))
+			expand(pattern.trim(), rules);
+		return new ArrayList<String>(rules);
+	}
+
+	/**
+	 * Replaces the first bracket group by every subset of its digits and
+	 * expands the rest recursively
+	 */
+	private static void expand(String pattern, Set<String> rules) {
+		int open = pattern.indexOf('[');
+		if (open < 0) {
+			rules.add(Rule.parse(pattern).toString());
+			return;
+		}
+
+		int close = pattern.indexOf(']', open);
+		if (close < 0)
+			throw new IllegalArgumentException("Missing ] in " + pattern);
+		String digits = pattern.substring(open + 1, close);
+		if (digits.length() > 9)
+			throw new IllegalArgumentException("Too many digits in " + pattern);
+
+		for (int subset = 0; subset < 1 << digits.length(); ++subset) {
+			StringBuilder chosen = new StringBuilder();
+			for (int i = 0; i < digits.length(); ++i)
+				if ((subset & (1 << i)) != 0)
+					chosen.append(digits.charAt(i));
+			expand(pattern.substring(0, open) + chosen
+					+ pattern.substring(close + 1), rules);
+		}
+	}
+
+	public void run() throws IOException {
+		System.out.println("Sweeping " + rules.size() + " rules with "
+				+ numSeeds + " seeds on " + threads + " threads");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<String> results = new ExecutorCompletionService<String>(
+				pool);
+		int runs = 0;
+		for (final String rule : rules) {
+			for (int i = 0; i < numSeeds; ++i) {
+				final long seed = firstSeed + i;
+				results.submit(new Callable<String>() {
+					public String call() {
+						return runOne(rule, seed);
+					}
+				});
+				++runs;
+			}
+		}
+
+		long start = System.nanoTime();
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(outputFile), "UTF-8"));
+		try {
+			out.write(HEADER + "\n");
+			for (int n = 0; n < runs; ++n) {
+				out.write(results.take().get());
+				out.flush();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ex);
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException(ex.getCause());
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Runs: " + runs + ", wall time: " + seconds + " s");
+		System.out.println("Runs/s: " + runs / seconds);
+	}
+
+	/**
+	 * Simulates one random board until it is periodic or the last
+	 * generation is reached
+	 *
+	 * @return CSV line
+	 */
+	private String runOne(String rule, long seed) {
+		Simulation simulation = new Simulation(true);
+		simulation.setBoardSize(width, height);
+		simulation.setRule(rule);
+		if (soupSize > 0)
+			simulation.randomizeBoard(seed, density, (width - soupSize) / 2,
+					(height - soupSize) / 2, soupSize, soupSize);
+		else
+			simulation.randomizeBoard(seed, density);
+
+		CycleDetector detector = new CycleDetector(simulation, maxPeriod, true);
+		StringBuilder growth = new StringBuilder();
+		growth.append(simulation.getNumLiving());
+		while (simulation.getNumGenerations() < generations) {
+			simulation.generate();
+			if (simulation.getNumGenerations() % sampleInterval == 0)
+				growth.append(' ').append(simulation.getNumLiving());
+			if (detector.update())
+				break;
+		}
+
+		return rule + "," + seed + "," + simulation.getNumGenerations() + ","
+				+ simulation.getNumLiving() + "," + detector.getPeriod() + ","
+				+ detector.getStart() + "," + growth + "\n";
+	}
+
+	public static void main(String[] argv) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		SweepRunner runner;
+		try {
+			runner = new SweepRunner(argv);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println("Usage: SweepRunner [-r rules] [-s seed]"
+					+ " [-c count] [-w width] [-h height] [-d density]"
+					+ " [-q size] [-n generations]"
+					+ " [-p period] [-g interval] [-t threads] [-o output.csv]");
+			System.exit(1);
+			return;
+		}
+		runner.run();
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8
@@ -0,0 +1,121 @@
+package game_of_life;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes a whole vector of cells per instruction with the incubating
+ * Vector API. The neighbors are counted by adding the shifted rows, the new
+ * cells are looked up in the rule tables by shuffling.
+ *
+ * Needs <code>--add-modules jdk.incubator.vector</code> at compile and run
+ * time. {@link Simulation} loads this class by reflection and falls back to
+ * scalar code if the module is missing.
+ */
+final class VectorKernel implements CellKernel {
+
+	/**
+	 * At most one tile row per vector, longer vectors would mostly be masked
+	 */
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED
+			.vectorBitSize() > 256 ? ByteVector.SPECIES_256
+			: ByteVector.SPECIES_PREFERRED;
+
+	/**
+	 * Longs per vector
+	 */
+	private static final int WORDS = SPECIES.length() / 8;
+
+	/**
+	 * Tables need 9 entries, so they fit into vectors of 16 lanes
+	 */
+	private static final int MIN_LANES = 16;
+
+	private ByteVector deadCells;
+
+	private ByteVector livingCells;
+
+	VectorKernel() {
+		if (SPECIES.length() < MIN_LANES)
+			throw new UnsupportedOperationException("Vector length "
+					+ SPECIES.length() + " too short");
+	}
+
+	public void setRule(byte[] deadCells, byte[] livingCells) {
+		this.deadCells = ByteVector.fromArray(SPECIES,
+				Arrays.copyOf(deadCells, SPECIES.length()), 0);
+		this.livingCells = ByteVector.fromArray(SPECIES,
+				Arrays.copyOf(livingCells, SPECIES.length()), 0);
+	}
+
+	/**
+	 * Everything is inlined into one loop, vectors passed to a method which
+	 * is not inlined would be boxed. Masked loads are not compiled to vector
+	 * instructions, so the rest of the row is left to the caller.
+	 *
+	 * Most operations on masks are not compiled to vector instructions
+	 * either. The living, flipped and changed cells are stored as bytes into
+	 * the scratch buffer instead and counted as longs.
+	 */
+	public int step(byte[] top, byte[] row, byte[] bottom, byte[] out,
+			int from, int to, long position, Result result) {
+		long[] scratch = result.scratch;
+		int x = from;
+		for (; x + SPECIES.length() <= to; x += SPECIES.length()) {
+			ByteVector n = alive(top, x - 1).add(alive(top, x))
+					.add(alive(top, x + 1)).add(alive(row, x - 1))
+					.add(alive(row, x + 1)).add(alive(bottom, x - 1))
+					.add(alive(bottom, x)).add(alive(bottom, x + 1));
+
+			ByteVector old = ByteVector.fromArray(SPECIES, row, x);
+			ByteVector wasAlive = old.min((byte) 1);
+			ByteVector next = n.selectFrom(deadCells).blend(
+					n.selectFrom(livingCells),
+					wasAlive.compare(VectorOperators.NE, 0));
+			next.intoArray(out, x);
+
+			ByteVector isAlive = next.min((byte) 1);
+			isAlive.reinterpretAsLongs().intoArray(scratch, 0);
+			isAlive.lanewise(VectorOperators.XOR, wasAlive)
+					.reinterpretAsLongs().intoArray(scratch, WORDS);
+			next.lanewise(VectorOperators.XOR, old).reinterpretAsLongs()
+					.intoArray(scratch, 2 * WORDS);
+
+			// Byte i of word w holds lane 8 * w + i
+			for (int w = 0; w < WORDS; ++w) {
+				long living = scratch[w];
+				if (living != 0) {
+					int lane = x + 8 * w;
+					result.living += Long.bitCount(living);
+					result.xMin = Math.min(result.xMin, lane
+							+ (Long.numberOfTrailingZeros(living) >>> 3));
+					result.xMax = Math.max(result.xMax, lane + 7
+							- (Long.numberOfLeadingZeros(living) >>> 3));
+				}
+
+				long flipped = scratch[WORDS + w];
+				while (flipped != 0) {
+					result.hash ^= Simulation.cellHash(position + x + 8 * w
+							+ (Long.numberOfTrailingZeros(flipped) >>> 3));
+					flipped &= flipped - 1;
+				}
+
+				if (scratch[2 * WORDS + w] != 0)
+					result.changed = true;
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * 1 for living cells, 0 for dead cells
+	 */
+	private static ByteVector alive(byte[] row, int x) {
+		return ByteVector.fromArray(SPECIES, row, x).min((byte) 1);
+	}
+}
+// vim:et:sw=4:ts=4:fileencoding=utf-8